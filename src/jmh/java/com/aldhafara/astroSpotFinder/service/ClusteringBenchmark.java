@@ -0,0 +1,126 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.LocationConditions;
+import com.aldhafara.astroSpotFinder.model.LocationsCluster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of clustering with the number of spots, spread over a 150 km search area with the depth 0 cluster
+ * distance. {@code pairwise} is the clustering used before {@link ProximityClustering}. {@code localProjection} runs
+ * with {@code astrospot.search.distance=local-projection}, where every spot is projected once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class ClusteringBenchmark {
+
+    private static final double EPS_KM = 14.5;
+
+    @Param({"100", "500", "2000"})
+    public int points;
+
+    private final StraightLineDistanceService distanceService = new StraightLineDistanceService();
+    private final LocalProjectionDistanceService projection = new LocalProjectionDistanceService(new Coordinate(50, 20));
+    private List<LocationConditions> locations;
+    private List<LocationsCluster> pairs;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        locations = new ArrayList<>();
+        for (int i = 0; i < points; i++) {
+            double latitude = 50 + (random.nextDouble() - 0.5) * 2.7;
+            double longitude = 20 + (random.nextDouble() - 0.5) * 4.2;
+            locations.add(new LocationConditions(new Coordinate(latitude, longitude), i, null, null));
+        }
+        pairs = new ArrayList<>();
+        for (int i = 0; i + 1 < points; i += 2) {
+            pairs.add(new LocationsCluster(List.of(locations.get(i), locations.get(i + 1))));
+        }
+    }
+
+    @Benchmark
+    public List<LocationsCluster> spatialHash() {
+        return ProximityClustering.cluster(locations, null, EPS_KM, distanceService);
+    }
+
+    @Benchmark
+    public List<LocationsCluster> localProjection() {
+        return ProximityClustering.cluster(locations, null, EPS_KM, projection);
+    }
+
+    /**
+     * Merge of clusters of two spots each, as the refined clusters of one depth are merged.
+     */
+    @Benchmark
+    public List<LocationsCluster> merge() {
+        return ProximityClustering.merge(pairs, EPS_KM, distanceService);
+    }
+
+    @Benchmark
+    public List<LocationsCluster> pairwise() {
+        List<LocationsCluster> clusters = new ArrayList<>();
+        for (LocationConditions point : locations) {
+            LocationsCluster clusterToJoin = null;
+            for (LocationsCluster cluster : clusters) {
+                if (cluster.getLocations().stream()
+                        .anyMatch(loc -> distanceService.findDistance(loc.coordinate(), point.coordinate()) <= EPS_KM)) {
+                    clusterToJoin = cluster;
+                    break;
+                }
+            }
+            if (clusterToJoin != null) {
+                clusterToJoin.add(point);
+            } else {
+                clusters.add(new LocationsCluster(Set.of(point)));
+            }
+        }
+        boolean merged;
+        do {
+            merged = false;
+            outerLoop:
+            for (int i = 0; i < clusters.size(); i++) {
+                for (int j = i + 1; j < clusters.size(); j++) {
+                    if (close(clusters.get(i), clusters.get(j))) {
+                        clusters.get(j).getLocations().forEach(clusters.get(i)::add);
+                        clusters.remove(j);
+                        merged = true;
+                        break outerLoop;
+                    }
+                }
+            }
+        } while (merged);
+        return clusters;
+    }
+
+    private boolean close(LocationsCluster a, LocationsCluster b) {
+        for (LocationConditions locA : a.getLocations()) {
+            for (LocationConditions locB : b.getLocations()) {
+                if (distanceService.findDistance(locA.coordinate(), locB.coordinate()) <= EPS_KM) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,126 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.cache.interceptor.SimpleKey;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pairwise distances between points of a 150 km search area. {@code cachedHaversine} reproduces the former
+ * {@code @Cacheable("distances")} path (a {@link SimpleKey} per call looked up in a bounded Caffeine cache) without
+ * the Spring proxy, so it is a lower bound of what that path cost.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DistanceBenchmark {
+
+    private static final int POINTS = 1024;
+    private static final double EPS_KM = 10;
+
+    private final StraightLineDistanceService haversine = new StraightLineDistanceService();
+    private final Cache<SimpleKey, Double> distances = Caffeine.newBuilder().maximumSize(100_000).build();
+    private LocalProjectionDistanceService projection;
+    private Coordinate[] coordinates;
+    private double[][] projected;
+    private double[] latitudes;
+    private double[] longitudes;
+    private double[] out;
+    private int next;
+    private int round;
+
+    @Setup
+    public void setUp() {
+        Coordinate origin = new Coordinate(50, 20);
+        projection = new LocalProjectionDistanceService(origin);
+        coordinates = new Coordinate[POINTS];
+        projected = new double[POINTS][];
+        latitudes = new double[POINTS];
+        longitudes = new double[POINTS];
+        out = new double[POINTS];
+        Random random = new Random(42);
+        for (int i = 0; i < POINTS; i++) {
+            double angle = random.nextDouble() * 2 * Math.PI;
+            double distanceDegrees = 150 / 111.195 * Math.sqrt(random.nextDouble());
+            double latitude = origin.latitude() + distanceDegrees * Math.cos(angle);
+            double longitude = origin.longitude() + distanceDegrees * Math.sin(angle) / Math.cos(Math.toRadians(latitude));
+            coordinates[i] = new Coordinate(latitude, longitude);
+            projected[i] = projection.project(coordinates[i]);
+            latitudes[i] = latitude;
+            longitudes[i] = longitude;
+        }
+    }
+
+    @Benchmark
+    public double cachedHaversine() {
+        int a = nextA();
+        Coordinate pointA = coordinates[a];
+        Coordinate pointB = coordinates[b(a)];
+        return distances.get(new SimpleKey(pointA, pointB), key -> haversine.findDistance(pointA, pointB));
+    }
+
+    @Benchmark
+    public double haversine() {
+        int a = nextA();
+        return haversine.findDistance(coordinates[a], coordinates[b(a)]);
+    }
+
+    @Benchmark
+    public double localProjection() {
+        int a = nextA();
+        return projection.findDistance(coordinates[a], coordinates[b(a)]);
+    }
+
+    @Benchmark
+    public boolean projectedEpsCheck() {
+        int a = nextA();
+        return LocalProjectionDistanceService.isWithin(projected[a], projected[b(a)], EPS_KM);
+    }
+
+    /**
+     * Distances from one point to all {@value #POINTS} points; divide the score by {@value #POINTS} to compare with the
+     * per-pair benchmarks. Uses SIMD lanes when built with {@code -P vector}, see the profile in {@code pom.xml}.
+     */
+    @Benchmark
+    public double[] batchHaversine() {
+        haversine.distancesFrom(coordinates[nextA()], latitudes, longitudes, POINTS, out);
+        return out;
+    }
+
+    @Benchmark
+    public double[] batchLocalProjection() {
+        projection.distancesFrom(coordinates[nextA()], latitudes, longitudes, POINTS, out);
+        return out;
+    }
+
+    private int nextA() {
+        next = (next + 1) & (POINTS - 1);
+        if (next == 0) {
+            round++;
+        }
+        return next;
+    }
+
+    /**
+     * Pairs every point with a different partner in each round, so like in a real search few pairs repeat.
+     */
+    private int b(int a) {
+        return (a + round + 1) & (POINTS - 1);
+    }
+}
@@ -1,5 +1,10 @@
 package com.aldhafara.astroSpotFinder;
 
+import com.aldhafara.astroSpotFinder.configuration.AdaptiveLimiterConfig;
+import com.aldhafara.astroSpotFinder.configuration.CacheSpecsConfig;
+import com.aldhafara.astroSpotFinder.configuration.HedgingConfig;
+import com.aldhafara.astroSpotFinder.configuration.HttpClientConfig;
+import com.aldhafara.astroSpotFinder.configuration.PrefetchConfig;
 import com.aldhafara.astroSpotFinder.configuration.TopLocationsConfig;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -8,7 +13,8 @@ import org.springframework.cache.annotation.EnableCaching;
 
 @SpringBootApplication
 @EnableCaching
-@EnableConfigurationProperties(TopLocationsConfig.class)
+@EnableConfigurationProperties({TopLocationsConfig.class, CacheSpecsConfig.class, PrefetchConfig.class,
+        AdaptiveLimiterConfig.class, HedgingConfig.class, HttpClientConfig.class})
 public class AstroSpotFinderApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,17 @@
+package com.aldhafara.astroSpotFinder.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+@ConfigurationProperties(prefix = "astrospot.limiter")
+public record AdaptiveLimiterConfig(@DefaultValue Settings lightPollution,
+                                    @DefaultValue Settings weatherForecast) {
+
+    public record Settings(@DefaultValue("true") boolean enabled,
+                           @DefaultValue("8") int initialLimit,
+                           @DefaultValue("1") int minLimit,
+                           @DefaultValue("64") int maxLimit,
+                           @DefaultValue("0.5") double backoffRatio,
+                           @DefaultValue("2.0") double latencyTolerance) {
+    }
+}
@@ -0,0 +1,60 @@
+package com.aldhafara.astroSpotFinder.configuration;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Configuration
+@ConditionalOnProperty(name = "spring.cache.type", havingValue = "caffeine", matchIfMissing = true)
+public class CacheConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheConfig.class);
+
+    static final String DEFAULT_SPEC = "maximumSize=10000,expireAfterWrite=1h,recordStats";
+    static final Map<String, String> DEFAULT_SPECS = Map.of(
+            "lightPollution", "maximumSize=500000,expireAfterWrite=30d,recordStats",
+            "lightPollution.dummy", "maximumSize=100000,expireAfterWrite=1d,recordStats",
+            "weatherforecast", "maximumSize=10000,expireAfterWrite=3h,recordStats",
+            "weatherforecast.dummy", "maximumSize=1000,expireAfterWrite=3h,recordStats");
+
+    @Bean
+    public CacheManager cacheManager(CacheSpecsConfig cacheSpecsConfig) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        // CompletableFuture-returning @Cacheable methods (weather forecasts) require Caffeine's async mode
+        cacheManager.setAsyncCacheMode(true);
+        cacheManager.setCacheSpecification(cacheSpecsConfig.defaultSpec() != null ? cacheSpecsConfig.defaultSpec() : DEFAULT_SPEC);
+
+        Map<String, String> specs = new HashMap<>(DEFAULT_SPECS);
+        if (cacheSpecsConfig.specs() != null) {
+            specs.putAll(cacheSpecsConfig.specs());
+        }
+        specs.forEach((name, spec) -> {
+            log.debug("Cache {} configured with spec {}", name, spec);
+            cacheManager.registerCustomCache(name, Caffeine.from(spec).buildAsync());
+        });
+        return cacheManager;
+    }
+
+    @Bean
+    public MeterBinder cacheHitRatioMetrics(CacheManager cacheManager) {
+        return registry -> cacheManager.getCacheNames().forEach(name -> {
+            if (cacheManager.getCache(name) instanceof CaffeineCache cache) {
+                Gauge.builder("cache.hit.ratio", cache.getNativeCache(), nativeCache -> nativeCache.stats().hitRate())
+                        .description("Ratio of cache lookups that were hits")
+                        .tag("cache", name)
+                        .register(registry);
+            }
+        });
+    }
+}
@@ -0,0 +1,9 @@
+package com.aldhafara.astroSpotFinder.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.Map;
+
+@ConfigurationProperties(prefix = "astrospot.cache")
+public record CacheSpecsConfig(String defaultSpec, Map<String, String> specs) {
+}
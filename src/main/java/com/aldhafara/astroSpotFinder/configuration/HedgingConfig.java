@@ -0,0 +1,18 @@
+package com.aldhafara.astroSpotFinder.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "astrospot.hedging")
+public record HedgingConfig(@DefaultValue Settings lightPollution,
+                            @DefaultValue Settings weatherForecast) {
+
+    public record Settings(@DefaultValue("false") boolean enabled,
+                           @DefaultValue("0.95") double percentile,
+                           @DefaultValue("50ms") Duration minDelay,
+                           @DefaultValue("0.05") double maxExtraLoad,
+                           @DefaultValue("1000") int window) {
+    }
+}
@@ -0,0 +1,22 @@
+package com.aldhafara.astroSpotFinder.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+@ConfigurationProperties(prefix = "astrospot.http")
+public record HttpClientConfig(@DefaultValue Settings lightPollution,
+                               @DefaultValue Settings weatherForecast) {
+
+    public record Settings(@DefaultValue("false") boolean http2,
+                           @DefaultValue("64") int maxConnectionsPerRoute,
+                           @DefaultValue("128") int maxConnectionsTotal,
+                           @DefaultValue("30s") Duration keepAlive,
+                           @DefaultValue("2s") Duration connectTimeout,
+                           @DefaultValue("5s") Duration readTimeout,
+                           @DefaultValue("10s") Duration responseTimeout,
+                           @DefaultValue("2s") Duration poolTimeout,
+                           @DefaultValue("true") boolean gzip) {
+    }
+}
@@ -0,0 +1,24 @@
+package com.aldhafara.astroSpotFinder.configuration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+
+@ConfigurationProperties(prefix = "astrospot.prefetch")
+public record PrefetchConfig(boolean enabled,
+                             List<Region> regions,
+                             @DefaultValue("1") int depth,
+                             @DefaultValue("50") int pointsPerSecond,
+                             @DefaultValue("100") int batchSize,
+                             @DefaultValue("0.95") double coverageThreshold,
+                             @DefaultValue("24h") Duration refreshInterval) {
+
+    public PrefetchConfig {
+        regions = regions == null ? List.of() : List.copyOf(regions);
+    }
+
+    public record Region(String name, double latitude, double longitude, double radiusKm) {
+    }
+}
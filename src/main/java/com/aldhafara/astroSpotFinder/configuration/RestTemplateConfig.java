@@ -1,14 +1,176 @@
 package com.aldhafara.astroSpotFinder.configuration;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.io.ConnectionEndpoint;
+import org.apache.hc.client5.http.io.LeaseRequest;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * One client stack per upstream service, configured under {@code astrospot.http.light-pollution.*} and
+ * {@code astrospot.http.weather-forecast.*}. By default Apache HttpClient with a pooled, keep-alive HTTP/1.1
+ * connection manager (pool metrics under {@code httpcomponents.httpclient.pool.*} and
+ * {@code http.client.pool.wait}); with {@code http2=true} the JDK client, which negotiates HTTP/2 and falls back to
+ * HTTP/1.1.
+ */
 @Configuration
 public class RestTemplateConfig {
 
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate lightPollutionRestTemplate(HttpClientConfig config, MeterRegistry meterRegistry) {
+        return restTemplate("lightpollution", config.lightPollution(), meterRegistry);
+    }
+
+    @Bean
+    public RestTemplate weatherForecastRestTemplate(HttpClientConfig config, MeterRegistry meterRegistry) {
+        return restTemplate("weatherforecast", config.weatherForecast(), meterRegistry);
+    }
+
+    static RestTemplate restTemplate(String name, HttpClientConfig.Settings settings, MeterRegistry meterRegistry) {
+        RestTemplate restTemplate = new RestTemplate(requestFactory(name, settings, meterRegistry));
+        if (settings.http2() && settings.gzip()) {
+            // Apache HttpClient decompresses by itself, the JDK client does not
+            restTemplate.getInterceptors().add(new GzipDecodingInterceptor());
+        }
+        return restTemplate;
+    }
+
+    static ClientHttpRequestFactory requestFactory(String name, HttpClientConfig.Settings settings,
+                                                   MeterRegistry meterRegistry) {
+        if (settings.http2()) {
+            HttpClient httpClient = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_2)
+                    .connectTimeout(settings.connectTimeout())
+                    .build();
+            JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+            requestFactory.setReadTimeout(settings.responseTimeout());
+            return requestFactory;
+        }
+
+        TimedConnectionManager connectionManager = new TimedConnectionManager(Timer.builder("http.client.pool.wait")
+                .description("Time spent waiting for a pooled connection")
+                .tag("client", name)
+                .register(meterRegistry));
+        connectionManager.setMaxTotal(settings.maxConnectionsTotal());
+        connectionManager.setDefaultMaxPerRoute(settings.maxConnectionsPerRoute());
+        connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.of(settings.connectTimeout()))
+                .setSocketTimeout(Timeout.of(settings.readTimeout()))
+                .setTimeToLive(TimeValue.of(settings.keepAlive()))
+                .build());
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, name).bindTo(meterRegistry);
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.of(settings.poolTimeout()))
+                        .setResponseTimeout(Timeout.of(settings.responseTimeout()))
+                        .setConnectionKeepAlive(TimeValue.of(settings.keepAlive()))
+                        .setContentCompressionEnabled(settings.gzip())
+                        .build())
+                .evictIdleConnections(TimeValue.of(settings.keepAlive()))
+                .build();
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    private static final class GzipDecodingInterceptor implements ClientHttpRequestInterceptor {
+
+        @Override
+        public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+                throws IOException {
+            request.getHeaders().set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+            ClientHttpResponse response = execution.execute(request, body);
+            if (!"gzip".equalsIgnoreCase(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING))) {
+                return response;
+            }
+            HttpHeaders headers = new HttpHeaders();
+            headers.putAll(response.getHeaders());
+            headers.remove(HttpHeaders.CONTENT_ENCODING);
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            return new ClientHttpResponse() {
+                @Override
+                public HttpStatusCode getStatusCode() throws IOException {
+                    return response.getStatusCode();
+                }
+
+                @Override
+                public String getStatusText() throws IOException {
+                    return response.getStatusText();
+                }
+
+                @Override
+                public HttpHeaders getHeaders() {
+                    return headers;
+                }
+
+                @Override
+                public InputStream getBody() throws IOException {
+                    return new GZIPInputStream(response.getBody());
+                }
+
+                @Override
+                public void close() {
+                    response.close();
+                }
+            };
+        }
+    }
+
+    private static final class TimedConnectionManager extends PoolingHttpClientConnectionManager {
+        private final Timer waitTimer;
+
+        private TimedConnectionManager(Timer waitTimer) {
+            this.waitTimer = waitTimer;
+        }
+
+        @Override
+        public LeaseRequest lease(String id, HttpRoute route, Timeout requestTimeout, Object state) {
+            LeaseRequest lease = super.lease(id, route, requestTimeout, state);
+            return new LeaseRequest() {
+                @Override
+                public ConnectionEndpoint get(Timeout timeout)
+                        throws InterruptedException, ExecutionException, TimeoutException {
+                    long start = System.nanoTime();
+                    try {
+                        return lease.get(timeout);
+                    } finally {
+                        waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return lease.cancel();
+                }
+            };
+        }
     }
 }
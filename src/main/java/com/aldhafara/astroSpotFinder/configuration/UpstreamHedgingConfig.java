@@ -0,0 +1,23 @@
+package com.aldhafara.astroSpotFinder.configuration;
+
+import com.aldhafara.astroSpotFinder.upstream.HedgedRequests;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class UpstreamHedgingConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "astrospot.hedging.light-pollution", name = "enabled", havingValue = "true")
+    public HedgedRequests lightPollutionHedging(HedgingConfig config, MeterRegistry meterRegistry) {
+        return new HedgedRequests("lightpollution", config.lightPollution(), meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "astrospot.hedging.weather-forecast", name = "enabled", havingValue = "true")
+    public HedgedRequests weatherForecastHedging(HedgingConfig config, MeterRegistry meterRegistry) {
+        return new HedgedRequests("weatherforecast", config.weatherForecast(), meterRegistry);
+    }
+}
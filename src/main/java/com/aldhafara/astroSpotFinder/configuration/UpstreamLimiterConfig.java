@@ -0,0 +1,23 @@
+package com.aldhafara.astroSpotFinder.configuration;
+
+import com.aldhafara.astroSpotFinder.upstream.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class UpstreamLimiterConfig {
+
+    @Bean
+    @ConditionalOnProperty(prefix = "astrospot.limiter.light-pollution", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public AdaptiveConcurrencyLimiter lightPollutionLimiter(AdaptiveLimiterConfig config, MeterRegistry meterRegistry) {
+        return new AdaptiveConcurrencyLimiter("lightpollution", config.lightPollution(), meterRegistry);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "astrospot.limiter.weather-forecast", name = "enabled", havingValue = "true", matchIfMissing = true)
+    public AdaptiveConcurrencyLimiter weatherForecastLimiter(AdaptiveLimiterConfig config, MeterRegistry meterRegistry) {
+        return new AdaptiveConcurrencyLimiter("weatherforecast", config.weatherForecast(), meterRegistry);
+    }
+}
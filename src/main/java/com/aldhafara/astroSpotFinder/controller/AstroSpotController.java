@@ -8,6 +8,7 @@ import com.aldhafara.astroSpotFinder.model.ScoringParameters;
 import com.aldhafara.astroSpotFinder.model.SearchArea;
 import com.aldhafara.astroSpotFinder.model.SearchContext;
 import com.aldhafara.astroSpotFinder.model.SearchParams;
+import com.aldhafara.astroSpotFinder.model.SearchSession;
 import com.aldhafara.astroSpotFinder.model.SimplifiedLocationConditions;
 import com.aldhafara.astroSpotFinder.service.AstroSpotService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -29,6 +30,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
@@ -42,8 +44,11 @@ public class AstroSpotController {
 
     private final double gridLatDeg;
     private final double gridLonDeg;
+    private final double gridReferenceLatitude;
     private final int gridDiv;
     private final int maxDepth;
+    private final int maxParallelism;
+    private final long defaultTimeoutMs;
 
     private final AstroSpotService astroSpotService;
 
@@ -51,13 +56,19 @@ public class AstroSpotController {
     public AstroSpotController(AstroSpotService astroSpotService,
                                @Value("${astrospot.grid.latitude.size}") double gridLatDeg,
                                @Value("${astrospot.grid.longitude.size}") double gridLonDeg,
+                               @Value("${astrospot.grid.longitude.reference-latitude:52}") double gridReferenceLatitude,
                                @Value("${astrospot.grid.step.divisor}") int gridDiv,
-                               @Value("${astrospot.grid.depth.max}") int maxDepth) {
+                               @Value("${astrospot.grid.depth.max}") int maxDepth,
+                               @Value("${astrospot.search.max-parallelism:16}") int maxParallelism,
+                               @Value("${astrospot.search.timeout-ms:30000}") long defaultTimeoutMs) {
         this.astroSpotService = astroSpotService;
         this.gridLatDeg = gridLatDeg;
         this.gridLonDeg = gridLonDeg;
+        this.gridReferenceLatitude = gridReferenceLatitude;
         this.gridDiv = gridDiv;
         this.maxDepth = maxDepth;
+        this.maxParallelism = maxParallelism;
+        this.defaultTimeoutMs = defaultTimeoutMs;
     }
 
     @GetMapping("/best")
@@ -65,7 +76,8 @@ public class AstroSpotController {
             @RequestParam @Min(-90) @Max(90) double latitude,
             @RequestParam @Min(-180) @Max(180) double longitude,
             @RequestParam @Min(0) @Max(150) double radiusKm,
-            @RequestParam(required = false, defaultValue = "100") @Min(0) int maxResults
+            @RequestParam(required = false, defaultValue = "100") @Min(0) int maxResults,
+            @RequestParam(required = false) @Min(1) Long timeoutMs
     ) {
         Coordinate center = new Coordinate(latitude, longitude);
         SearchArea searchArea = SearchArea.builder()
@@ -76,11 +88,9 @@ public class AstroSpotController {
                 .maxDepth(maxDepth)
                 .gridDiv(gridDiv)
                 .searchArea(searchArea)
+                .session(new SearchSession(maxParallelism, Duration.ofMillis(timeoutMs != null ? timeoutMs : defaultTimeoutMs)))
                 .build();
-        GridSize gridSize = GridSize.builder()
-                .latitudeDegrees(gridLatDeg)
-                .longitudeDegrees(gridLonDeg)
-                .build();
+        GridSize gridSize = GridSize.atLatitude(gridLatDeg, gridLonDeg, gridReferenceLatitude, latitude);
 
         SearchParams searchParams = SearchParams.builder()
                 .searchContext(searchContext)
@@ -3,10 +3,16 @@ package com.aldhafara.astroSpotFinder.messaging;
 import com.aldhafara.astroSpotFinder.model.Coordinate;
 
 import java.time.Instant;
+import java.util.List;
 
+/**
+ * One rejected LightPollutionService request: {@code coordinate} is the requested point, or the first point of a
+ * batch request, and {@code coordinates} every point the request carried.
+ */
 public record LightPollutionErrorEvent(
         Coordinate coordinate,
         int httpStatusCode,
         Instant timestamp,
-        String errorMessage
+        String errorMessage,
+        List<Coordinate> coordinates
 ) {}
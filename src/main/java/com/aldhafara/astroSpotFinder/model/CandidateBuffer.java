@@ -0,0 +1,99 @@
+package com.aldhafara.astroSpotFinder.model;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Measured grid points of one search step, stored column by column: {@link GridCell} key, latitude, longitude and
+ * brightness in parallel primitive arrays. Brightness lookup, top-K selection and clustering work on the columns, so
+ * a {@link LocationConditions} is created only for the points that make it into a response. The column accessors
+ * return the backing arrays, which are valid up to {@link #size()} and must not be modified. Not thread-safe.
+ */
+public final class CandidateBuffer {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] keys;
+    private double[] latitudes;
+    private double[] longitudes;
+    private double[] brightness;
+    private int size;
+
+    public CandidateBuffer() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public CandidateBuffer(int capacity) {
+        int initial = Math.max(1, capacity);
+        this.keys = new long[initial];
+        this.latitudes = new double[initial];
+        this.longitudes = new double[initial];
+        this.brightness = new double[initial];
+    }
+
+    public void add(long cellKey, double value) {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            brightness = Arrays.copyOf(brightness, capacity);
+        }
+        keys[size] = cellKey;
+        latitudes[size] = GridCell.latitude(cellKey);
+        longitudes[size] = GridCell.longitude(cellKey);
+        brightness[size] = value;
+        size++;
+    }
+
+    /**
+     * Returns a new buffer with the rows at the given indices, in that order.
+     */
+    public CandidateBuffer select(int[] indices) {
+        CandidateBuffer selected = new CandidateBuffer(indices.length);
+        for (int index : indices) {
+            selected.add(keys[index], brightness[index]);
+        }
+        return selected;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public double[] latitudes() {
+        return latitudes;
+    }
+
+    public double[] longitudes() {
+        return longitudes;
+    }
+
+    public double[] brightness() {
+        return brightness;
+    }
+
+    public long key(int index) {
+        return keys[index];
+    }
+
+    public LocationConditions location(int index) {
+        return new LocationConditions(new Coordinate(latitudes[index], longitudes[index]), brightness[index], null, null);
+    }
+
+    /**
+     * Builds the records of all rows, in row order.
+     */
+    public Set<LocationConditions> toLocations() {
+        Set<LocationConditions> locations = new LinkedHashSet<>();
+        for (int i = 0; i < size; i++) {
+            locations.add(location(i));
+        }
+        return locations;
+    }
+}
@@ -4,5 +4,10 @@ import java.util.List;
 
 public record DarkestLocationsResponse(
         String additionalMessage,
-        List<LocationsCluster> locationsCluster
-) {}
+        List<LocationsCluster> locationsCluster,
+        Integer depthReached
+) {
+    public DarkestLocationsResponse(String additionalMessage, List<LocationsCluster> locationsCluster) {
+        this(additionalMessage, locationsCluster, null);
+    }
+}
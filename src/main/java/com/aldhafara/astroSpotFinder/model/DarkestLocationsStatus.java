@@ -9,6 +9,8 @@ public enum DarkestLocationsStatus {
     LIST_BRIGHTEST_SPOTS_IS_EMPTY("List brightestSpots is empty."),
     LIST_GRID_POINTS_IS_EMPTY("List gridPoints is empty."),
     INVALID_PARAMETERS("Invalid parameters."),
+    SEARCH_TIME_LIMIT_REACHED("The search time limit was reached, returning the best results found so far."),
+    LOOKUP_BUDGET_SPENT("The lookup budget was spent before every promising spot was refined."),
     ANSWER_MAY_BE_INACCURATE_PLEASE_TRY_AGAIN_LATER("The answer may be inaccurate, please try again later.");
 
     private final String message;
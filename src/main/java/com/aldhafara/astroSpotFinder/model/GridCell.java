@@ -0,0 +1,60 @@
+package com.aldhafara.astroSpotFinder.model;
+
+/**
+ * Canonical integer lattice for grid points. A coordinate is snapped to whole micro-degrees (about 0.1 m), which is
+ * finer than any grid the search can generate, and the (latitude, longitude) indices are packed into one {@code long}.
+ * The key does not depend on the grid configuration, so the same place gets the same key at every depth, in every
+ * request and across restarts.
+ */
+public final class GridCell {
+
+    public static final double DEGREES_PER_UNIT = 1e-6;
+    private static final double UNITS_PER_DEGREE = 1e6;
+
+    private GridCell() {
+    }
+
+    public static long key(double latitude, double longitude) {
+        return fromIndices(latitudeIndex(latitude), longitudeIndex(longitude));
+    }
+
+    public static long key(Coordinate coordinate) {
+        return key(coordinate.latitude(), coordinate.longitude());
+    }
+
+    public static long fromIndices(int latitudeIndex, int longitudeIndex) {
+        return ((long) latitudeIndex << 32) | (longitudeIndex & 0xFFFFFFFFL);
+    }
+
+    public static int latitudeIndex(double latitude) {
+        return (int) Math.round(latitude * UNITS_PER_DEGREE);
+    }
+
+    public static int longitudeIndex(double longitude) {
+        return (int) Math.round(longitude * UNITS_PER_DEGREE);
+    }
+
+    public static int latitudeIndex(long key) {
+        return (int) (key >> 32);
+    }
+
+    public static int longitudeIndex(long key) {
+        return (int) key;
+    }
+
+    public static double latitude(long key) {
+        return latitudeIndex(key) / UNITS_PER_DEGREE;
+    }
+
+    public static double longitude(long key) {
+        return longitudeIndex(key) / UNITS_PER_DEGREE;
+    }
+
+    public static Coordinate coordinate(long key) {
+        return new Coordinate(latitude(key), longitude(key));
+    }
+
+    public static Coordinate snap(double latitude, double longitude) {
+        return coordinate(key(latitude, longitude));
+    }
+}
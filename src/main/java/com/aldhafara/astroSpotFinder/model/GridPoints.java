@@ -0,0 +1,183 @@
+package com.aldhafara.astroSpotFinder.model;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Grid points inside a search circle, stored as {@link GridCell} keys. Points are generated row by row on the
+ * integer lattice {@code (row * latitudeStep, column * longitudeStep)}: for every row the longitude span that lies
+ * within the great-circle radius is solved from the haversine formula once, so the only per-point work is packing the
+ * key.
+ * <p>
+ * The hexagonal lattice keeps the rows but spaces columns {@code 2 / sqrt(3)} times wider and shifts every odd row by
+ * half a column. Its largest distance from any location to the nearest point is 2/3 of a cell side against
+ * {@code 1 / sqrt(2)} of the square lattice, with 13.4 % fewer points. Dividing both steps by an integer gives a finer
+ * hexagonal lattice that contains every point of the coarser one, as for the square lattice.
+ */
+public final class GridPoints {
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final int INITIAL_CAPACITY = 64;
+    private static final double HEXAGONAL_COLUMN_SCALE = 2 / Math.sqrt(3);
+
+    private long[] keys;
+    private int size;
+
+    private GridPoints(int capacity) {
+        this.keys = new long[Math.max(INITIAL_CAPACITY, capacity)];
+    }
+
+    public static GridPoints empty() {
+        return new GridPoints(0);
+    }
+
+    /**
+     * Returns the lattice points of {@code gridSize} that are within both the search area and the origin area.
+     */
+    public static GridPoints withinRadius(SearchArea searchArea, SearchArea originSearchArea, GridSize gridSize) {
+        return withinRadius(searchArea, originSearchArea, gridSize, false);
+    }
+
+    /**
+     * Same as {@link #withinRadius(SearchArea, SearchArea, GridSize)}, on the hexagonal lattice of {@code gridSize}
+     * when {@code hexagonal} is set.
+     */
+    public static GridPoints withinRadius(SearchArea searchArea, SearchArea originSearchArea, GridSize gridSize,
+                                          boolean hexagonal) {
+        Circle area = new Circle(searchArea);
+        Circle origin = new Circle(originSearchArea);
+        double latitudeStep = gridSize.latitudeDegrees();
+        double longitudeStep = hexagonal ? gridSize.longitudeDegrees() * HEXAGONAL_COLUMN_SCALE : gridSize.longitudeDegrees();
+
+        double south = Math.max(-90, Math.max(area.latitude - area.radiusDegrees, origin.latitude - origin.radiusDegrees));
+        double north = Math.min(90, Math.min(area.latitude + area.radiusDegrees, origin.latitude + origin.radiusDegrees));
+        int firstRow = (int) Math.ceil(south / latitudeStep);
+        int lastRow = (int) Math.floor(north / latitudeStep);
+
+        double estimate = Math.PI * area.radiusDegrees * area.radiusDegrees / (latitudeStep * longitudeStep);
+        GridPoints points = new GridPoints((int) Math.min(estimate * 2, 1 << 20));
+        for (int row = firstRow; row <= lastRow; row++) {
+            double latitude = row * latitudeStep;
+            double cosLatitude = Math.cos(Math.toRadians(latitude));
+            double halfSpan = area.halfSpan(latitude, cosLatitude);
+            double originHalfSpan = origin.halfSpan(latitude, cosLatitude);
+            if (Double.isNaN(halfSpan) || Double.isNaN(originHalfSpan)) {
+                continue;
+            }
+            double west = Math.max(area.longitude - halfSpan, origin.longitude - originHalfSpan);
+            double east = Math.min(area.longitude + halfSpan, origin.longitude + originHalfSpan);
+            double shift = hexagonal && (row & 1) != 0 ? 0.5 : 0;
+            int lastColumn = (int) Math.floor(east / longitudeStep - shift);
+            for (int column = (int) Math.ceil(west / longitudeStep - shift); column <= lastColumn; column++) {
+                points.add(GridCell.key(latitude, (column + shift) * longitudeStep));
+            }
+        }
+        return points;
+    }
+
+    /**
+     * Returns the keys of the lattice neighbours of the point {@code cellKey} of {@code gridSize}: 8 on the square
+     * lattice, 6 on the hexagonal one. They are the keys {@link #withinRadius} generates for those points.
+     */
+    public static long[] neighbours(long cellKey, GridSize gridSize, boolean hexagonal) {
+        double latitudeStep = gridSize.latitudeDegrees();
+        int row = (int) Math.rint(GridCell.latitude(cellKey) / latitudeStep);
+        double longitude = GridCell.longitude(cellKey);
+        if (!hexagonal) {
+            double longitudeStep = gridSize.longitudeDegrees();
+            int column = (int) Math.rint(longitude / longitudeStep);
+            long[] neighbours = new long[8];
+            int next = 0;
+            for (int dRow = -1; dRow <= 1; dRow++) {
+                for (int dColumn = -1; dColumn <= 1; dColumn++) {
+                    if (dRow != 0 || dColumn != 0) {
+                        neighbours[next++] = GridCell.key((row + dRow) * latitudeStep, (column + dColumn) * longitudeStep);
+                    }
+                }
+            }
+            return neighbours;
+        }
+        double longitudeStep = gridSize.longitudeDegrees() * HEXAGONAL_COLUMN_SCALE;
+        double shift = (row & 1) != 0 ? 0.5 : 0;
+        double otherShift = 0.5 - shift;
+        int column = (int) Math.rint(longitude / longitudeStep - shift);
+        int otherColumn = (int) Math.rint(column + shift - otherShift - 0.5);
+        return new long[]{
+                GridCell.key(row * latitudeStep, (column - 1 + shift) * longitudeStep),
+                GridCell.key(row * latitudeStep, (column + 1 + shift) * longitudeStep),
+                GridCell.key((row - 1) * latitudeStep, (otherColumn + otherShift) * longitudeStep),
+                GridCell.key((row - 1) * latitudeStep, (otherColumn + 1 + otherShift) * longitudeStep),
+                GridCell.key((row + 1) * latitudeStep, (otherColumn + otherShift) * longitudeStep),
+                GridCell.key((row + 1) * latitudeStep, (otherColumn + 1 + otherShift) * longitudeStep)
+        };
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long key(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return keys[index];
+    }
+
+    public Set<Coordinate> toCoordinates() {
+        Set<Coordinate> coordinates = HashSet.newHashSet(size);
+        for (int i = 0; i < size; i++) {
+            coordinates.add(GridCell.coordinate(keys[i]));
+        }
+        return coordinates;
+    }
+
+    private void add(long key) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+        }
+        keys[size++] = key;
+    }
+
+    private static final class Circle {
+        private final double latitude;
+        private final double longitude;
+        private final double radiusDegrees;
+        private final double haversineRadius;
+        private final double cosLatitude;
+
+        private Circle(SearchArea area) {
+            double angle = area.radiusKm() / EARTH_RADIUS_KM;
+            this.latitude = area.center().latitude();
+            this.longitude = area.center().longitude();
+            this.radiusDegrees = Math.toDegrees(angle);
+            this.haversineRadius = haversine(angle);
+            this.cosLatitude = Math.cos(Math.toRadians(latitude));
+        }
+
+        /**
+         * Returns half of the longitude span, in degrees, of the circle on the given latitude, or NaN when the
+         * latitude misses the circle.
+         */
+        private double halfSpan(double rowLatitude, double cosRowLatitude) {
+            double remaining = haversineRadius - haversine(Math.toRadians(rowLatitude - latitude));
+            if (remaining < 0) {
+                return Double.NaN;
+            }
+            double scale = cosLatitude * cosRowLatitude;
+            if (scale <= 0 || remaining >= scale) {
+                return 180;
+            }
+            return Math.toDegrees(2 * Math.asin(Math.sqrt(remaining / scale)));
+        }
+
+        private static double haversine(double angle) {
+            double sin = Math.sin(angle / 2);
+            return sin * sin;
+        }
+    }
+}
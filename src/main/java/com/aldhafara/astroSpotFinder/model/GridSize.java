@@ -2,4 +2,32 @@ package com.aldhafara.astroSpotFinder.model;
 import lombok.Builder;
 
 @Builder
-public record GridSize(double latitudeDegrees, double longitudeDegrees) {}
+public record GridSize(double latitudeDegrees, double longitudeDegrees) {
+
+    private static final double KM_PER_DEGREE_LATITUDE = Math.PI * 6371.0 / 180;
+
+    /**
+     * Latitude bands are capped here, so the longitude step stays finite near the poles.
+     */
+    private static final double MAX_BAND_LATITUDE = 85;
+
+    /**
+     * Returns the grid for a search centred on {@code latitude}. The longitude step, configured for
+     * {@code referenceLatitude}, is scaled so that cells keep their east-west size in kilometres. The latitude is
+     * rounded to a whole degree first, so all searches in one band use the same lattice and share cached cells.
+     */
+    public static GridSize atLatitude(double latitudeDegrees, double longitudeDegrees, double referenceLatitude,
+                                      double latitude) {
+        double band = Math.min(MAX_BAND_LATITUDE, Math.abs(Math.rint(latitude)));
+        double scale = Math.cos(Math.toRadians(referenceLatitude)) / Math.cos(Math.toRadians(band));
+        return new GridSize(latitudeDegrees, longitudeDegrees * scale);
+    }
+
+    /**
+     * Returns the longer side of a cell at {@code latitude}, in kilometres.
+     */
+    public double maxSideKm(double latitude) {
+        double kmPerDegreeLongitude = KM_PER_DEGREE_LATITUDE * Math.cos(Math.toRadians(latitude));
+        return Math.max(latitudeDegrees * KM_PER_DEGREE_LATITUDE, longitudeDegrees * kmPerDegreeLongitude);
+    }
+}
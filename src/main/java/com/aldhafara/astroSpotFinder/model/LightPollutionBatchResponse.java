@@ -0,0 +1,18 @@
+package com.aldhafara.astroSpotFinder.model;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Result of a batch lookup. {@code noData} holds the coordinates the provider answered without usable data;
+ * coordinates that are in none of the three collections were not answered, e.g. because the request failed.
+ */
+public record LightPollutionBatchResponse(
+        Map<Coordinate, LightPollutionInfo> lightPollution,
+        Set<Coordinate> rateLimited,
+        Set<Coordinate> noData) {
+
+    public LightPollutionBatchResponse(Map<Coordinate, LightPollutionInfo> lightPollution, Set<Coordinate> rateLimited) {
+        this(lightPollution, rateLimited, Set.of());
+    }
+}
@@ -1,29 +1,197 @@
 package com.aldhafara.astroSpotFinder.model;
 
+import java.util.AbstractSet;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 
+/**
+ * Locations of one cluster, kept in an append-only array. Adding a location or a whole cluster only appends; the
+ * array is sorted by brightness and cleared of repeated locations when it is read, and only if something was appended
+ * out of order since the last read. Locations with equal brightness but different coordinates are all kept.
+ */
 public class LocationsCluster {
 
-    private final SortedSet<LocationConditions> locations;
+    private static final int INITIAL_CAPACITY = 8;
+    private static final Comparator<LocationConditions> BY_BRIGHTNESS = Comparator.comparingDouble(LocationConditions::brightness);
+
+    private LocationConditions[] locations;
+    private int size;
+    private boolean sorted = true;
+    private boolean shared;
 
     public LocationsCluster() {
-        this.locations = new TreeSet<>(Comparator.comparingDouble(LocationConditions::brightness));
+        this.locations = new LocationConditions[INITIAL_CAPACITY];
     }
 
     public LocationsCluster(Collection<LocationConditions> initialLocations) {
-        this.locations = new TreeSet<>(Comparator.comparingDouble(LocationConditions::brightness));
-        this.locations.addAll(initialLocations);
+        setLocations(initialLocations);
+    }
+
+    public synchronized void add(LocationConditions loc) {
+        ensureCapacity(size + 1);
+        if (size > 0 && Double.compare(loc.brightness(), locations[size - 1].brightness()) <= 0) {
+            sorted = false;
+        }
+        locations[size++] = loc;
+    }
+
+    /**
+     * Appends all locations of {@code other}, which is left unchanged.
+     */
+    public void addAll(LocationsCluster other) {
+        LocationConditions[] otherLocations;
+        int otherSize;
+        synchronized (other) {
+            other.normalize();
+            other.shared = true;
+            otherLocations = other.locations;
+            otherSize = other.size;
+        }
+        if (otherSize == 0) {
+            return;
+        }
+        synchronized (this) {
+            ensureCapacity(size + otherSize);
+            if (size > 0 && Double.compare(otherLocations[0].brightness(), locations[size - 1].brightness()) <= 0) {
+                sorted = false;
+            }
+            System.arraycopy(otherLocations, 0, locations, size, otherSize);
+            size += otherSize;
+        }
+    }
+
+    public synchronized int size() {
+        normalize();
+        return size;
+    }
+
+    /**
+     * Returns a read-only view of the locations in ascending brightness. Locations added later do not show in it.
+     */
+    public synchronized Set<LocationConditions> getLocations() {
+        normalize();
+        shared = true;
+        return new SortedView(locations, size);
+    }
+
+    /**
+     * Replaces the locations of the cluster; used when a cluster is read from a request body.
+     */
+    public synchronized void setLocations(Collection<LocationConditions> newLocations) {
+        locations = new LocationConditions[Math.max(INITIAL_CAPACITY, newLocations.size())];
+        size = 0;
+        sorted = true;
+        shared = false;
+        newLocations.forEach(this::add);
     }
 
-    public void add(LocationConditions loc) {
-        locations.add(loc);
+    private void ensureCapacity(int capacity) {
+        if (capacity > locations.length) {
+            locations = Arrays.copyOf(locations, Math.max(capacity, locations.length * 2));
+            shared = false;
+        } else if (shared) {
+            locations = locations.clone();
+            shared = false;
+        }
     }
 
-    public Set<LocationConditions> getLocations() {
-        return locations;
+    private void normalize() {
+        if (sorted) {
+            return;
+        }
+        if (shared) {
+            locations = locations.clone();
+            shared = false;
+        }
+        Arrays.sort(locations, 0, size, BY_BRIGHTNESS);
+        int kept = 0;
+        int runStart = 0;
+        for (int i = 0; i < size; i++) {
+            LocationConditions location = locations[i];
+            if (kept > 0 && Double.compare(location.brightness(), locations[kept - 1].brightness()) != 0) {
+                runStart = kept;
+            }
+            if (!containsInRun(locations, runStart, kept, location)) {
+                locations[kept++] = location;
+            }
+        }
+        Arrays.fill(locations, kept, size, null);
+        size = kept;
+        sorted = true;
+    }
+
+    private static boolean containsInRun(LocationConditions[] locations, int from, int to, LocationConditions location) {
+        for (int i = from; i < to; i++) {
+            if (locations[i].equals(location)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class SortedView extends AbstractSet<LocationConditions> {
+
+        private final LocationConditions[] locations;
+        private final int size;
+
+        SortedView(LocationConditions[] locations, int size) {
+            this.locations = locations;
+            this.size = size;
+        }
+
+        @Override
+        public Iterator<LocationConditions> iterator() {
+            return new Iterator<>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < size;
+                }
+
+                @Override
+                public LocationConditions next() {
+                    if (next >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    return locations[next++];
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Binary search for the first location as bright as {@code o}, then a scan over the equally bright ones.
+         */
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof LocationConditions location)) {
+                return false;
+            }
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (Double.compare(locations[middle].brightness(), location.brightness()) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            for (int i = low; i < size && Double.compare(locations[i].brightness(), location.brightness()) == 0; i++) {
+                if (locations[i].equals(location)) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 }
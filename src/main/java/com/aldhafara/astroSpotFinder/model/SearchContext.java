@@ -6,6 +6,7 @@ import lombok.Builder;
 public record SearchContext(
         int maxDepth,
         int gridDiv,
-        SearchArea searchArea
+        SearchArea searchArea,
+        SearchSession session
 ) {
 }
@@ -0,0 +1,124 @@
+package com.aldhafara.astroSpotFinder.model;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * State shared by all levels of one search request. It bounds how many subtasks the request may have running
+ * concurrently; a subtask that does not get a slot runs on the thread that asked for it. An optional deadline
+ * limits the whole search: once it passes, the threads working on the request are interrupted, which abandons their
+ * upstream calls, and every level returns the best results it has.
+ */
+public final class SearchSession {
+
+    public static final int DEFAULT_MAX_PARALLELISM = 16;
+    private static final long CANCEL_GRACE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Semaphore forks;
+    private final long deadlineNanos;
+    private final boolean bounded;
+    private final Set<Thread> workers = new HashSet<>();
+    private final AtomicInteger depthReached = new AtomicInteger(-1);
+    private final VisitedCells visitedCells = new VisitedCells();
+    private volatile boolean cancelled;
+
+    public SearchSession() {
+        this(DEFAULT_MAX_PARALLELISM);
+    }
+
+    public SearchSession(int maxParallelism) {
+        this(maxParallelism, null);
+    }
+
+    public SearchSession(int maxParallelism, Duration timeout) {
+        this.forks = new Semaphore(Math.max(0, maxParallelism));
+        this.bounded = timeout != null;
+        this.deadlineNanos = bounded ? System.nanoTime() + timeout.toNanos() : 0;
+    }
+
+    public boolean tryFork() {
+        return forks.tryAcquire();
+    }
+
+    public void joinFork() {
+        forks.release();
+    }
+
+    public int availableForks() {
+        return forks.availablePermits();
+    }
+
+    /**
+     * Returns the time left until the deadline in nanoseconds, {@link Long#MAX_VALUE} when there is no deadline.
+     */
+    public long remainingNanos() {
+        if (!bounded) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * Returns how long a caller may still wait for a cancelled subtask to hand back its partial results.
+     */
+    public long remainingGraceNanos() {
+        if (!bounded) {
+            return CANCEL_GRACE_NANOS;
+        }
+        return Math.max(0, deadlineNanos + CANCEL_GRACE_NANOS - System.nanoTime());
+    }
+
+    public boolean isExpired() {
+        return cancelled || remainingNanos() == 0;
+    }
+
+    /**
+     * Registers the current thread as working on this request, so that {@link #cancel()} can interrupt it.
+     */
+    public synchronized void enter() {
+        workers.add(Thread.currentThread());
+        if (cancelled) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Deregisters the current thread and clears an interrupt {@link #cancel()} may have left on it.
+     */
+    public synchronized void exit() {
+        workers.remove(Thread.currentThread());
+        if (cancelled) {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Marks the session as expired and interrupts every other thread working on it.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        Thread current = Thread.currentThread();
+        workers.stream()
+                .filter(worker -> worker != current)
+                .forEach(Thread::interrupt);
+    }
+
+    public VisitedCells visitedCells() {
+        return visitedCells;
+    }
+
+    public void reached(int depth) {
+        depthReached.accumulateAndGet(depth, Math::max);
+    }
+
+    /**
+     * Returns the deepest level whose refinement completed for at least one cluster, -1 before depth 0 completes.
+     */
+    public int depthReached() {
+        return depthReached.get();
+    }
+}
@@ -0,0 +1,113 @@
+package com.aldhafara.astroSpotFinder.model;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Grid cells one search request has already claimed for a lookup, with the brightness found for them. Shared by all
+ * branches of the request, so overlapping sub-grids of neighbouring spots are looked up only once. A branch that
+ * finds a cell claimed by another branch can wait for that branch to resolve or release it.
+ */
+public final class VisitedCells {
+
+    private static final double PENDING = Double.NaN;
+
+    private final ConcurrentMap<Long, CompletableFuture<Double>> cells = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, LongAdder> generated = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Integer, LongAdder> repeated = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Integer> pruned = new ConcurrentHashMap<>();
+
+    /**
+     * Claims the cell for a lookup. Returns {@code false} when another branch has already claimed it.
+     */
+    public boolean claim(long cellKey) {
+        return cells.putIfAbsent(cellKey, new CompletableFuture<>()) == null;
+    }
+
+    /**
+     * Records the brightness found for the cell, {@link Double#NaN} when it had no data.
+     */
+    public void resolve(long cellKey, double brightness) {
+        cells.computeIfAbsent(cellKey, key -> new CompletableFuture<>()).complete(brightness);
+    }
+
+    /**
+     * Gives up a claim whose lookup did not answer, so a later branch may claim the cell again. Branches waiting for
+     * it see no data. Does nothing once the cell is resolved.
+     */
+    public void release(long cellKey) {
+        CompletableFuture<Double> brightness = cells.get(cellKey);
+        if (brightness != null && !brightness.isDone()) {
+            cells.remove(cellKey, brightness);
+            brightness.complete(PENDING);
+        }
+    }
+
+    /**
+     * Returns the brightness found for the cell, or {@link Double#NaN} while its lookup is pending or when it had no
+     * data.
+     */
+    public double brightness(long cellKey) {
+        CompletableFuture<Double> brightness = cells.get(cellKey);
+        return brightness != null ? brightness.getNow(PENDING) : PENDING;
+    }
+
+    /**
+     * Same as {@link #brightness(long)}, but waits while the branch that claimed the cell is still looking it up. A
+     * branch must resolve or release its own claims before waiting for others.
+     */
+    public double awaitBrightness(long cellKey) {
+        CompletableFuture<Double> brightness = cells.get(cellKey);
+        return brightness != null ? brightness.join() : PENDING;
+    }
+
+    public int size() {
+        return cells.size();
+    }
+
+    public void record(int depth, int generatedPoints, int repeatedPoints) {
+        generated.computeIfAbsent(depth, d -> new LongAdder()).add(generatedPoints);
+        repeated.computeIfAbsent(depth, d -> new LongAdder()).add(repeatedPoints);
+    }
+
+    /**
+     * Returns the share of generated grid points per depth that had already been claimed by another branch.
+     */
+    public SortedMap<Integer, Double> repeatRates() {
+        SortedMap<Integer, Double> rates = new TreeMap<>();
+        for (Map.Entry<Integer, LongAdder> entry : generated.entrySet()) {
+            long total = entry.getValue().sum();
+            long repeats = repeated.getOrDefault(entry.getKey(), new LongAdder()).sum();
+            rates.put(entry.getKey(), total == 0 ? 0.0 : (double) repeats / total);
+        }
+        return rates;
+    }
+
+    /**
+     * Marks the spot in the cell as not worth refining below {@code depth}. Returns {@code false} when it was already
+     * marked.
+     */
+    public boolean prune(long cellKey, int depth) {
+        return pruned.putIfAbsent(cellKey, depth) == null;
+    }
+
+    public boolean isPruned(long cellKey) {
+        return pruned.containsKey(cellKey);
+    }
+
+    /**
+     * Returns the number of spots left unrefined per depth.
+     */
+    public SortedMap<Integer, Integer> pruneCounts() {
+        SortedMap<Integer, Integer> counts = new TreeMap<>();
+        for (Integer depth : pruned.values()) {
+            counts.merge(depth, 1, Integer::sum);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,170 @@
+package com.aldhafara.astroSpotFinder.raster;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only view of a tiled light pollution raster written by {@link LightPollutionRasterWriter}.
+ * <p>
+ * File layout (big-endian):
+ * <pre>
+ * int    magic ("LPRX")
+ * int    version
+ * int    width, height      raster size in pixels
+ * int    tileSize           tile side in pixels
+ * int    reserved
+ * double west, north        coordinates of the north-west corner of pixel (0, 0)
+ * double cellSize           pixel side in degrees
+ * long[] tileOffsets        one entry per tile, row-major from the north-west corner, 0 = no data
+ * float[tileSize * tileSize] per stored tile, row-major, NaN = no data
+ * </pre>
+ * Tiles are mapped with {@link MappedByteBuffer}s of at most {@link #MAX_SEGMENT_BYTES}, so a lookup is two array
+ * reads and one absolute buffer read without any allocation.
+ */
+public final class LightPollutionRaster {
+
+    static final int MAGIC = 0x4C505258;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 48;
+    static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int tilesX;
+    private final double west;
+    private final double north;
+    private final double cellSize;
+    private final int[] tileSegments;
+    private final int[] tilePositions;
+    private final MappedByteBuffer[] segments;
+
+    private LightPollutionRaster(int width, int height, int tileSize, double west, double north, double cellSize,
+                                 int[] tileSegments, int[] tilePositions, MappedByteBuffer[] segments) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.tilesX = tileCount(width, tileSize);
+        this.west = west;
+        this.north = north;
+        this.cellSize = cellSize;
+        this.tileSegments = tileSegments;
+        this.tilePositions = tilePositions;
+        this.segments = segments;
+    }
+
+    public static LightPollutionRaster open(Path path) throws IOException {
+        return open(path, MAX_SEGMENT_BYTES);
+    }
+
+    static LightPollutionRaster open(Path path, long maxSegmentBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header, 0);
+            header.flip();
+
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a light pollution raster: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported light pollution raster version " + version + ": " + path);
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            int tileSize = header.getInt();
+            header.getInt();
+            double west = header.getDouble();
+            double north = header.getDouble();
+            double cellSize = header.getDouble();
+
+            int tiles = tileCount(width, tileSize) * tileCount(height, tileSize);
+            ByteBuffer index = ByteBuffer.allocate(tiles * Long.BYTES);
+            readFully(channel, index, HEADER_BYTES);
+            index.flip();
+
+            long tileBytes = (long) tileSize * tileSize * Float.BYTES;
+            int[] tileSegments = new int[tiles];
+            int[] tilePositions = new int[tiles];
+            List<MappedByteBuffer> segments = new ArrayList<>();
+            long segmentStart = -1;
+            long segmentEnd = -1;
+
+            for (int tile = 0; tile < tiles; tile++) {
+                long offset = index.getLong();
+                if (offset == 0) {
+                    tileSegments[tile] = -1;
+                    continue;
+                }
+                if (segmentStart < 0 || offset < segmentStart || offset + tileBytes - segmentStart > maxSegmentBytes) {
+                    if (segmentStart >= 0) {
+                        segments.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentEnd - segmentStart));
+                    }
+                    segmentStart = offset;
+                    segmentEnd = offset;
+                }
+                segmentEnd = Math.max(segmentEnd, offset + tileBytes);
+                tileSegments[tile] = segments.size();
+                tilePositions[tile] = (int) (offset - segmentStart);
+            }
+            if (segmentStart >= 0) {
+                segments.add(channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentEnd - segmentStart));
+            }
+
+            return new LightPollutionRaster(width, height, tileSize, west, north, cellSize,
+                    tileSegments, tilePositions, segments.toArray(MappedByteBuffer[]::new));
+        }
+    }
+
+    /**
+     * Returns the brightness stored for the pixel containing the given point, or {@link Double#NaN} when the point is
+     * outside the raster or has no data.
+     */
+    public double brightness(double latitude, double longitude) {
+        double x = (longitude - west) / cellSize;
+        double y = (north - latitude) / cellSize;
+        if (!(x >= 0 && x < width && y >= 0 && y < height)) {
+            return Double.NaN;
+        }
+        int px = (int) x;
+        int py = (int) y;
+        int tile = (py / tileSize) * tilesX + px / tileSize;
+        int segment = tileSegments[tile];
+        if (segment < 0) {
+            return Double.NaN;
+        }
+        int pixel = (py % tileSize) * tileSize + px % tileSize;
+        return segments[segment].getFloat(tilePositions[tile] + pixel * Float.BYTES);
+    }
+
+    public int width() {
+        return width;
+    }
+
+    public int height() {
+        return height;
+    }
+
+    int segmentCount() {
+        return segments.length;
+    }
+
+    static int tileCount(int pixels, int tileSize) {
+        return (pixels + tileSize - 1) / tileSize;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of light pollution raster");
+            }
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.aldhafara.astroSpotFinder.raster;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One-shot converter from an ESRI ASCII grid (for example a VIIRS or World Atlas export produced with
+ * {@code gdal_translate -of AAIGrid}) to the tiled raster read by {@link LightPollutionRaster}.
+ * Values are stored as they are, so the export must already use the 0-255 relative brightness scale.
+ * <p>
+ * Usage: {@code java -cp target/classes com.aldhafara.astroSpotFinder.raster.LightPollutionRasterConverter
+ * <input.asc> <output.lpr> [tileSize]}
+ */
+public final class LightPollutionRasterConverter {
+
+    static final int DEFAULT_TILE_SIZE = 256;
+
+    private LightPollutionRasterConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 3) {
+            System.err.println("Usage: LightPollutionRasterConverter <input.asc> <output.lpr> [tileSize]");
+            System.exit(1);
+        }
+        int tileSize = args.length == 3 ? Integer.parseInt(args[2]) : DEFAULT_TILE_SIZE;
+        convert(Path.of(args[0]), Path.of(args[1]), tileSize);
+        System.out.println("Light pollution raster written to " + args[1]);
+    }
+
+    public static void convert(Path asciiGrid, Path output, int tileSize) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(asciiGrid, StandardCharsets.US_ASCII)) {
+            Tokenizer tokenizer = new Tokenizer(reader);
+            Map<String, String> header = readHeader(tokenizer);
+
+            int width = Integer.parseInt(required(header, "ncols"));
+            int height = Integer.parseInt(required(header, "nrows"));
+            double cellSize = Double.parseDouble(required(header, "cellsize"));
+            double west = header.containsKey("xllcorner")
+                    ? Double.parseDouble(header.get("xllcorner"))
+                    : Double.parseDouble(required(header, "xllcenter")) - cellSize / 2;
+            double south = header.containsKey("yllcorner")
+                    ? Double.parseDouble(header.get("yllcorner"))
+                    : Double.parseDouble(required(header, "yllcenter")) - cellSize / 2;
+            double north = south + height * cellSize;
+            double noData = header.containsKey("nodata_value")
+                    ? Double.parseDouble(header.get("nodata_value"))
+                    : Double.NaN;
+
+            try (LightPollutionRasterWriter writer =
+                         new LightPollutionRasterWriter(output, width, height, tileSize, west, north, cellSize)) {
+                float[] band = new float[tileSize * width];
+                for (int row = 0; row < height; row += tileSize) {
+                    int rows = Math.min(tileSize, height - row);
+                    for (int i = 0; i < rows * width; i++) {
+                        double value = Double.parseDouble(tokenizer.next());
+                        band[i] = value == noData ? Float.NaN : (float) value;
+                    }
+                    writer.writeBand(band, rows);
+                }
+            }
+        }
+    }
+
+    private static Map<String, String> readHeader(Tokenizer tokenizer) throws IOException {
+        Map<String, String> header = new HashMap<>();
+        while (tokenizer.peekIsKeyword()) {
+            header.put(tokenizer.next().toLowerCase(Locale.ROOT), tokenizer.next());
+        }
+        return header;
+    }
+
+    private static String required(Map<String, String> header, String key) {
+        String value = header.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException("ASCII grid header is missing " + key);
+        }
+        return value;
+    }
+
+    private static final class Tokenizer {
+        private final Reader reader;
+        private final StringBuilder token = new StringBuilder();
+        private int next = ' ';
+
+        private Tokenizer(Reader reader) {
+            this.reader = reader;
+        }
+
+        private boolean peekIsKeyword() throws IOException {
+            skipWhitespace();
+            return Character.isLetter(next);
+        }
+
+        private String next() throws IOException {
+            skipWhitespace();
+            if (next < 0) {
+                throw new IOException("Unexpected end of ASCII grid");
+            }
+            token.setLength(0);
+            while (next >= 0 && !Character.isWhitespace(next)) {
+                token.append((char) next);
+                next = reader.read();
+            }
+            return token.toString();
+        }
+
+        private void skipWhitespace() throws IOException {
+            while (next >= 0 && Character.isWhitespace(next)) {
+                next = reader.read();
+            }
+        }
+    }
+}
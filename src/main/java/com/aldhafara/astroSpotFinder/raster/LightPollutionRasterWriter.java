@@ -0,0 +1,111 @@
+package com.aldhafara.astroSpotFinder.raster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes a tiled light pollution raster readable by {@link LightPollutionRaster}.
+ * Pixels are supplied north to south in bands of {@code tileSize} rows; tiles containing only no-data pixels
+ * are not stored.
+ */
+public final class LightPollutionRasterWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int tilesX;
+    private final long[] tileOffsets;
+    private final ByteBuffer tileBuffer;
+    private int rowsWritten;
+    private long position;
+
+    public LightPollutionRasterWriter(Path path, int width, int height, int tileSize,
+                                      double west, double north, double cellSize) throws IOException {
+        if (width <= 0 || height <= 0 || cellSize <= 0) {
+            throw new IllegalArgumentException("Raster size and cell size must be positive");
+        }
+        if (tileSize <= 0 || (long) tileSize * tileSize * Float.BYTES > LightPollutionRaster.MAX_SEGMENT_BYTES) {
+            throw new IllegalArgumentException("Unsupported tile size: " + tileSize);
+        }
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.tilesX = LightPollutionRaster.tileCount(width, tileSize);
+        this.tileOffsets = new long[tilesX * LightPollutionRaster.tileCount(height, tileSize)];
+        this.tileBuffer = ByteBuffer.allocate(tileSize * tileSize * Float.BYTES);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+
+        ByteBuffer header = ByteBuffer.allocate(LightPollutionRaster.HEADER_BYTES);
+        header.putInt(LightPollutionRaster.MAGIC)
+                .putInt(LightPollutionRaster.VERSION)
+                .putInt(width)
+                .putInt(height)
+                .putInt(tileSize)
+                .putInt(0)
+                .putDouble(west)
+                .putDouble(north)
+                .putDouble(cellSize)
+                .flip();
+        writeFully(header, 0);
+        this.position = LightPollutionRaster.HEADER_BYTES + (long) tileOffsets.length * Long.BYTES;
+    }
+
+    /**
+     * Writes the next band of rows. {@code band} holds {@code rows * width} pixels, row-major, and {@code rows} must
+     * equal the tile size except for the last, southernmost band.
+     */
+    public void writeBand(float[] band, int rows) throws IOException {
+        if (rows <= 0 || rowsWritten + rows > height || (rows != tileSize && rowsWritten + rows != height)) {
+            throw new IllegalArgumentException("Unexpected band of " + rows + " rows at row " + rowsWritten);
+        }
+        int tileRow = rowsWritten / tileSize;
+        for (int tileX = 0; tileX < tilesX; tileX++) {
+            tileBuffer.clear();
+            boolean hasData = false;
+            for (int y = 0; y < tileSize; y++) {
+                for (int x = 0; x < tileSize; x++) {
+                    int column = tileX * tileSize + x;
+                    float value = y < rows && column < width ? band[y * width + column] : Float.NaN;
+                    hasData |= !Float.isNaN(value);
+                    tileBuffer.putFloat(value);
+                }
+            }
+            if (hasData) {
+                tileBuffer.flip();
+                tileOffsets[tileRow * tilesX + tileX] = position;
+                writeFully(tileBuffer, position);
+                position += tileBuffer.capacity();
+            }
+        }
+        rowsWritten += rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (rowsWritten != height) {
+                throw new IOException("Raster incomplete: " + rowsWritten + " of " + height + " rows written");
+            }
+            ByteBuffer index = ByteBuffer.allocate(tileOffsets.length * Long.BYTES);
+            for (long offset : tileOffsets) {
+                index.putLong(offset);
+            }
+            index.flip();
+            writeFully(index, LightPollutionRaster.HEADER_BYTES);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long at) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, at + buffer.position());
+        }
+    }
+}
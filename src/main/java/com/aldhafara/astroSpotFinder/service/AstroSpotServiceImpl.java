@@ -1,10 +1,14 @@
 package com.aldhafara.astroSpotFinder.service;
 
 import com.aldhafara.astroSpotFinder.configuration.TopLocationsConfig;
+import com.aldhafara.astroSpotFinder.model.CandidateBuffer;
 import com.aldhafara.astroSpotFinder.model.Coordinate;
 import com.aldhafara.astroSpotFinder.model.DarkestLocationsResponse;
 import com.aldhafara.astroSpotFinder.model.DarkestLocationsStatus;
+import com.aldhafara.astroSpotFinder.model.GridCell;
+import com.aldhafara.astroSpotFinder.model.GridPoints;
 import com.aldhafara.astroSpotFinder.model.GridSize;
+import com.aldhafara.astroSpotFinder.model.LightPollutionBatchResponse;
 import com.aldhafara.astroSpotFinder.model.LocationConditions;
 import com.aldhafara.astroSpotFinder.model.LocationsCluster;
 import com.aldhafara.astroSpotFinder.model.LocationsWithBrightnessResponse;
@@ -12,12 +16,16 @@ import com.aldhafara.astroSpotFinder.model.ScoringParameters;
 import com.aldhafara.astroSpotFinder.model.SearchArea;
 import com.aldhafara.astroSpotFinder.model.SearchContext;
 import com.aldhafara.astroSpotFinder.model.SearchParams;
+import com.aldhafara.astroSpotFinder.model.SearchSession;
 import com.aldhafara.astroSpotFinder.model.SimplifiedLocationConditions;
+import com.aldhafara.astroSpotFinder.model.VisitedCells;
+import com.aldhafara.astroSpotFinder.util.LongHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StopWatch;
-import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -29,12 +37,18 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -42,44 +56,78 @@ import java.util.stream.Collectors;
 public class AstroSpotServiceImpl implements AstroSpotService {
 
     private static final Logger log = LoggerFactory.getLogger(AstroSpotServiceImpl.class);
-
-    private static final double KM_PER_DEGREE = 65.4;
+    private static final int MIN_SAMPLED_NEIGHBOURS = 3;
 
     private final LightPollutionService lightPollutionService;
-    private final DistanceService distanceService;
     private final StraightLineDistanceService straightLineDistanceService;
     private final ExecutorService executorService;
+    private final ScheduledThreadPoolExecutor deadlines;
     private final WeatherForecastService weatherForecastService;
     private final LocationScorer locationScorer;
     private final int topNumber;
     private final double topPercent;
     private final boolean filterWithTies;
+    private final boolean localProjection;
+    private final boolean hexagonalGrid;
+    private final double flatRange;
 
     public AstroSpotServiceImpl(LightPollutionService lightPollutionService,
-                                DistanceService distanceService,
                                 StraightLineDistanceService straightLineDistanceService,
                                 WeatherForecastService weatherForecastService,
                                 LocationScorer locationScorer,
-                                TopLocationsConfig topLocationsConfig) {
+                                TopLocationsConfig topLocationsConfig,
+                                @Value("${astrospot.search.distance:haversine}") String distance,
+                                @Value("${astrospot.grid.lattice:square}") String lattice,
+                                @Value("${astrospot.search.refinement.flat-range:0}") double flatRange) {
         int processors = Runtime.getRuntime().availableProcessors();
         log.info("Number of available processors: {}", processors);
 
         this.lightPollutionService = lightPollutionService;
-        this.distanceService = distanceService;
         this.straightLineDistanceService = straightLineDistanceService;
         this.weatherForecastService = weatherForecastService;
         this.locationScorer = locationScorer;
-        this.executorService = new ThreadPoolExecutor(
-                0, processors * 2,
-                15L, TimeUnit.SECONDS,
-                new SynchronousQueue<>());
+        this.executorService = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("astrospot-search-", 0).factory());
+        this.deadlines = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "astrospot-search-deadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.deadlines.setRemoveOnCancelPolicy(true);
         this.topNumber = topLocationsConfig.number() <= 0 ? 1 : topLocationsConfig.number();
         this.topPercent = topLocationsConfig.percent() > 100 ? 100 : topLocationsConfig.percent();
         this.filterWithTies = topLocationsConfig.extended();
+        this.localProjection = "local-projection".equalsIgnoreCase(distance);
+        this.hexagonalGrid = "hexagonal".equalsIgnoreCase(lattice);
+        this.flatRange = flatRange;
     }
 
     @Override
     public DarkestLocationsResponse searchBestLocationsClusters(SearchParams searchParams) {
+        SearchParams params = withSession(searchParams);
+        SearchSession session = params.searchContext().session();
+        return withinDeadline(session, () -> searchClusters(params, session));
+    }
+
+    /**
+     * Runs the search on the calling thread and cancels the session, interrupting every thread working on it, when
+     * its deadline passes.
+     */
+    <T> T withinDeadline(SearchSession session, Supplier<T> search) {
+        ScheduledFuture<?> deadline = session.remainingNanos() == Long.MAX_VALUE
+                ? null
+                : deadlines.schedule(session::cancel, session.remainingNanos(), TimeUnit.NANOSECONDS);
+        session.enter();
+        try {
+            return search.get();
+        } finally {
+            session.exit();
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+        }
+    }
+
+    private DarkestLocationsResponse searchClusters(SearchParams searchParams, SearchSession session) {
         StopWatch stopWatch = new StopWatch();
         stopWatch.start("searchBestLocationsClusters [depth=%d]".formatted(searchParams.depth()));
         log.debug("searchBestLocationsClusters [depth={}]: Parameters radiusKm={} depth={} maxDepth={}",
@@ -93,7 +141,7 @@ public class AstroSpotServiceImpl implements AstroSpotService {
             return new DarkestLocationsResponse(DarkestLocationsStatus.INVALID_PARAMETERS.getMessage(), Collections.emptyList());
         }
 
-        Set<Coordinate> gridPoints = findPointsWithinRadius(
+        GridPoints gridPoints = gridPointsWithinRadius(
                 searchParams.searchContext().searchArea(),
                 searchParams.originSearchArea(),
                 searchParams.gridSize());
@@ -107,40 +155,51 @@ public class AstroSpotServiceImpl implements AstroSpotService {
         }
         log.debug("searchBestLocationsClusters [depth={}]: list gridPoints has size {}", searchParams.depth(), gridPoints.size());
 
-        LocationsWithBrightnessResponse locationsWithBrightnessResponse = getBrightnessForLocations(gridPoints);
-        Set<String> messages = new HashSet<>(locationsWithBrightnessResponse.getAdditionalMessages());
-        Set<LocationConditions> brightestSpots = getTopLocationConditions(locationsWithBrightnessResponse.getLocationsWithBrightness());
+        Set<String> messages = new HashSet<>();
+        CandidateBuffer candidates;
+        try {
+            candidates = getBrightnessForUnvisited(session, searchParams.depth(), gridPoints, messages);
+        } catch (RestClientException e) {
+            if (!session.isExpired()) {
+                throw e;
+            }
+            log.info("searchBestLocationsClusters [depth={}]: time limit reached before the first lookup finished", searchParams.depth());
+            return new DarkestLocationsResponse(DarkestLocationsStatus.SEARCH_TIME_LIMIT_REACHED.getMessage(), Collections.emptyList(), null);
+        }
+        CandidateBuffer brightestSpots = getTopCandidates(candidates);
 
         if (brightestSpots.isEmpty()) {
             log.debug("searchBestLocationsClusters [depth={}]: list brightestSpots is empty", searchParams.depth());
-            return new DarkestLocationsResponse(DarkestLocationsStatus.LIST_BRIGHTEST_SPOTS_IS_EMPTY.getMessage(), Collections.emptyList());
+            DarkestLocationsStatus status = session.isExpired()
+                    ? DarkestLocationsStatus.SEARCH_TIME_LIMIT_REACHED
+                    : DarkestLocationsStatus.LIST_BRIGHTEST_SPOTS_IS_EMPTY;
+            return new DarkestLocationsResponse(status.getMessage(), Collections.emptyList());
         }
+        session.reached(searchParams.depth());
         log.debug("searchBestLocationsClusters [depth={}]: list brightestSpots has size {}", searchParams.depth(), brightestSpots.size());
 
-        Coordinate center = searchParams.searchContext().searchArea().center();
-        double latDelta = searchParams.gridSize().latitudeDegrees();
-        double lonDelta = searchParams.gridSize().longitudeDegrees();
-
-        Coordinate pointB = new Coordinate(center.latitude() + latDelta, center.longitude() + lonDelta);
-
-        double epsDistance = straightLineDistanceService.findDistance(center, pointB);
-        epsDistance *= 1.1;
-
-        List<LocationsCluster> clusters = clusterByProximity(brightestSpots, epsDistance);
+        List<LocationsCluster> clusters = clusterCandidates(brightestSpots, clusterDistance(searchParams), distanceService(searchParams));
 
         stopWatch.stop();
         log.info("searchBestLocationsClusters finished at depth={} in {} ms, clusters size:{}", searchParams.depth(), stopWatch.getTotalTimeMillis(), clusters.size());
 
         DarkestLocationsResponse darkestLocationsResponse = recursiveSearchForClusters(searchParams, clusters);
         messages.add(darkestLocationsResponse.additionalMessage());
-        return new DarkestLocationsResponse(getAdditionalMessage(messages), darkestLocationsResponse.locationsCluster());
+        if (session.isExpired()) {
+            log.info("searchBestLocationsClusters: time limit reached, returning clusters refined to depth {}", session.depthReached());
+            messages.add(DarkestLocationsStatus.SEARCH_TIME_LIMIT_REACHED.getMessage());
+        }
+        log.debug("searchBestLocationsClusters: {} cells visited, repeated grid points per depth: {}, spots left unrefined per depth: {}",
+                session.visitedCells().size(), session.visitedCells().repeatRates(), session.visitedCells().pruneCounts());
+        return new DarkestLocationsResponse(getAdditionalMessage(messages), darkestLocationsResponse.locationsCluster(), session.depthReached());
     }
 
     private DarkestLocationsResponse recursiveSearchForClusters(SearchParams searchParams, List<LocationsCluster> clusters) {
-        Set<String> messages = new HashSet<>(Set.of());
+        SearchSession session = searchParams.searchContext().session();
+        Set<String> messages = ConcurrentHashMap.newKeySet();
         List<CompletableFuture<LocationsCluster>> futures = clusters.stream()
-                .map(cluster -> CompletableFuture.supplyAsync(() -> {
-                    LocationsWithBrightnessResponse response = recursiveSearchForTopSpotsInCluster(searchParams, cluster.getLocations());
+                .map(cluster -> supplyAsync(session, () -> {
+                    LocationsWithBrightnessResponse response = recursiveSearchForTopSpotsInCluster(searchParams, new HashSet<>(cluster.getLocations()));
                     Set<LocationConditions> updatedSet =
                             response.getLocationsWithBrightness();
                     messages.addAll(response.getAdditionalMessages());
@@ -155,23 +214,34 @@ public class AstroSpotServiceImpl implements AstroSpotService {
                 }))
                 .toList();
 
-        List<LocationsCluster> updatedClusters = futures.stream()
-                .map(future -> {
-                    try {
-                        return future.join();
-                    } catch (CompletionException e) {
-                        log.error("Exception during async cluster recursive search", e);
-                        return null;
-                    }
-                })
-                .filter(Objects::nonNull)
-                .toList();
+        List<LocationsCluster> updatedClusters = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            CompletableFuture<LocationsCluster> future = futures.get(i);
+            if (!awaitWithinDeadline(session, future)) {
+                log.debug("Cluster {} was not refined within the time limit, keeping its depth {} spots", i, searchParams.depth());
+                updatedClusters.add(clusters.get(i));
+                continue;
+            }
+            try {
+                LocationsCluster updated = future.join();
+                if (updated != null) {
+                    updatedClusters.add(updated);
+                }
+            } catch (CompletionException | CancellationException e) {
+                if (session.isExpired()) {
+                    log.debug("Cluster recursive search abandoned at the time limit", e);
+                    updatedClusters.add(clusters.get(i));
+                } else {
+                    log.error("Exception during async cluster recursive search", e);
+                }
+            }
+        }
 
         String message = getAdditionalMessage(messages);
         return new DarkestLocationsResponse(message, updatedClusters);
     }
 
-    private String getAdditionalMessage(Set<String> messages) {
+    String getAdditionalMessage(Set<String> messages) {
         log.debug("Additional messages: [\n{}]",String.join(",\n", messages));
         messages.remove(DarkestLocationsStatus.NO_NEED_TO_GO_DEEPER.getMessage());
         String message = String.join(", ", messages);
@@ -184,24 +254,29 @@ public class AstroSpotServiceImpl implements AstroSpotService {
         return message;
     }
 
-    private LocationsWithBrightnessResponse recursiveSearchForTopSpotsInCluster(SearchParams searchParams, Set<LocationConditions> currentClusterPoints) {
+    LocationsWithBrightnessResponse recursiveSearchForTopSpotsInCluster(SearchParams searchParams, Set<LocationConditions> currentClusterPoints) {
 
         if (searchParams.depth() >= searchParams.searchContext().maxDepth()) {
             return new LocationsWithBrightnessResponse(currentClusterPoints, Set.of(DarkestLocationsStatus.NO_NEED_TO_GO_DEEPER.getMessage()));
         }
+        SearchSession session = searchParams.searchContext().session();
+        if (session.isExpired()) {
+            return new LocationsWithBrightnessResponse(currentClusterPoints, Set.of(DarkestLocationsStatus.SEARCH_TIME_LIMIT_REACHED.getMessage()));
+        }
 
-        List<LocationConditions> clusterList = new ArrayList<>(currentClusterPoints);
+        List<LocationConditions> clusterList = spotsToRefine(searchParams, currentClusterPoints);
 
         List<CompletableFuture<LocationsWithBrightnessResponse>> futures = clusterList.stream()
-                .map(spot -> supplyAsync(() -> {
+                .map(spot -> supplyAsync(session, () -> {
                     Coordinate subCenter = spot.coordinate();
-                    double nextRadius = calculateNewRadius(searchParams.gridSize());
+                    double nextRadius = calculateNewRadius(searchParams.gridSize(), subCenter.latitude());
                     GridSize nextGrid = getNextGrid(searchParams);
 
                     SearchContext nextContext = SearchContext.builder()
                             .maxDepth(searchParams.searchContext().maxDepth())
                             .gridDiv(searchParams.searchContext().gridDiv())
                             .searchArea(new SearchArea(subCenter, nextRadius))
+                            .session(searchParams.searchContext().session())
                             .build();
 
                     SearchParams nextParams = SearchParams.builder()
@@ -218,13 +293,18 @@ public class AstroSpotServiceImpl implements AstroSpotService {
         Set<String> messages = new HashSet<>(Set.of());
 
         Set<LocationConditions> aggregatedResults = futures.stream()
+                .filter(future -> awaitWithinDeadline(session, future))
                 .map(future -> {
                     try {
                         LocationsWithBrightnessResponse locationsWithBrightnessResponse = future.join();
                         messages.addAll(locationsWithBrightnessResponse.getAdditionalMessages());
                         return locationsWithBrightnessResponse.getLocationsWithBrightness();
-                    } catch (CompletionException e) {
-                        log.error("Async recursive search error", e);
+                    } catch (CompletionException | CancellationException e) {
+                        if (session.isExpired()) {
+                            log.debug("Async recursive search abandoned at the time limit", e);
+                        } else {
+                            log.error("Async recursive search error", e);
+                        }
                         return Collections.<LocationConditions>emptyList();
                     }
                 })
@@ -232,10 +312,19 @@ public class AstroSpotServiceImpl implements AstroSpotService {
                 .flatMap(Collection::stream)
                 .collect(Collectors.toSet());
 
-        Set<Coordinate> aggregatedResultsCoordinates = aggregatedResults.stream().map(LocationConditions::coordinate).collect(Collectors.toSet());
-        LocationsWithBrightnessResponse locationsWithBrightnessResponse = getBrightnessForLocations(aggregatedResultsCoordinates);
+        if (session.isExpired()) {
+            Set<LocationConditions> refinedSoFar = new HashSet<>(currentClusterPoints);
+            refinedSoFar.addAll(aggregatedResults);
+            messages.add(DarkestLocationsStatus.SEARCH_TIME_LIMIT_REACHED.getMessage());
+            return new LocationsWithBrightnessResponse(getTopLocationConditions(refinedSoFar), messages);
+        }
+        if (!clusterList.isEmpty()) {
+            // A depth counts as reached only when some spot was actually refined at it
+            session.reached(searchParams.depth() + 1);
+        }
+
         Set<LocationConditions> currentClusterPointsWithNewLocationsWithBrightness = new HashSet<>(currentClusterPoints);
-        currentClusterPointsWithNewLocationsWithBrightness.addAll(locationsWithBrightnessResponse.getLocationsWithBrightness());
+        currentClusterPointsWithNewLocationsWithBrightness.addAll(aggregatedResults);
         Set<LocationConditions> brightestSpots = getTopLocationConditions(currentClusterPointsWithNewLocationsWithBrightness);
 
         currentClusterPoints.clear();
@@ -253,12 +342,52 @@ public class AstroSpotServiceImpl implements AstroSpotService {
             messages.addAll(asd.getAdditionalMessages());
             return new LocationsWithBrightnessResponse(asd.getLocationsWithBrightness(), messages);
         } else {
-            messages.addAll(locationsWithBrightnessResponse.getAdditionalMessages());
             return new LocationsWithBrightnessResponse(currentClusterPoints, messages);
         }
     }
 
+    /**
+     * Returns the spots that are worth refining on the next grid. With {@code astrospot.search.refinement.flat-range}
+     * above 0 a spot is left as it is when at least {@value #MIN_SAMPLED_NEIGHBOURS} of its lattice neighbours on the
+     * current grid have been looked up and the brightness of the spot and those neighbours spans less than that
+     * range: finer sampling of a flat field cannot find a noticeably darker spot. Spots left once are not refined at
+     * deeper levels of the request either.
+     */
+    List<LocationConditions> spotsToRefine(SearchParams searchParams, Collection<LocationConditions> spots) {
+        if (flatRange <= 0) {
+            return new ArrayList<>(spots);
+        }
+        VisitedCells visitedCells = searchParams.searchContext().session().visitedCells();
+        List<LocationConditions> toRefine = new ArrayList<>(spots.size());
+        for (LocationConditions spot : spots) {
+            long cellKey = GridCell.key(spot.coordinate());
+            if (visitedCells.isPruned(cellKey) || isFlat(spot.brightness(), cellKey, searchParams.gridSize(), visitedCells)) {
+                visitedCells.prune(cellKey, searchParams.depth());
+            } else {
+                toRefine.add(spot);
+            }
+        }
+        log.debug("spotsToRefine [depth={}]: refining {} of {} spots", searchParams.depth(), toRefine.size(), spots.size());
+        return toRefine;
+    }
+
+    private boolean isFlat(double brightness, long cellKey, GridSize gridSize, VisitedCells visitedCells) {
+        double min = brightness;
+        double max = brightness;
+        int sampled = 0;
+        for (long neighbour : GridPoints.neighbours(cellKey, gridSize, hexagonalGrid)) {
+            double neighbourBrightness = visitedCells.brightness(neighbour);
+            if (!Double.isNaN(neighbourBrightness)) {
+                min = Math.min(min, neighbourBrightness);
+                max = Math.max(max, neighbourBrightness);
+                sampled++;
+            }
+        }
+        return sampled >= MIN_SAMPLED_NEIGHBOURS && max - min < flatRange;
+    }
+
     public LocationsWithBrightnessResponse searchBestSpotsRecursive(SearchParams searchParams) {
+        searchParams = withSession(searchParams);
         StopWatch stopWatch = new StopWatch();
         stopWatch.start("searchBestSpotsRecursive [depth=%d]".formatted(searchParams.depth()));
         log.debug("searchBestSpotsRecursive [depth={}]: Parameters radiusKm={} depth={} maxDepth={}", searchParams.depth(), searchParams.searchContext().searchArea().radiusKm(), searchParams.depth(), searchParams.searchContext().maxDepth());
@@ -267,8 +396,11 @@ public class AstroSpotServiceImpl implements AstroSpotService {
             log.debug("searchBestSpotsRecursive [depth={}]: invalid parameters radiusKm={} depth={} maxDepth={}", searchParams.depth(), searchParams.searchContext().searchArea().radiusKm(), searchParams.depth(), searchParams.searchContext().maxDepth());
             return new LocationsWithBrightnessResponse(Collections.emptySet(), Set.of(DarkestLocationsStatus.INVALID_PARAMETERS.getMessage()));
         }
+        if (searchParams.searchContext().session().isExpired()) {
+            return new LocationsWithBrightnessResponse(Collections.emptySet(), Set.of(DarkestLocationsStatus.SEARCH_TIME_LIMIT_REACHED.getMessage()));
+        }
 
-        Set<Coordinate> gridPoints = findPointsWithinRadius(searchParams.searchContext().searchArea(), searchParams.originSearchArea(), searchParams.gridSize());
+        GridPoints gridPoints = gridPointsWithinRadius(searchParams.searchContext().searchArea(), searchParams.originSearchArea(), searchParams.gridSize());
 
         if (gridPoints.isEmpty()) {
             log.debug("searchBestSpotsRecursive [depth={}]: list gridPoints is empty, thickening the grid.", searchParams.depth());
@@ -276,9 +408,10 @@ public class AstroSpotServiceImpl implements AstroSpotService {
         }
         log.debug("searchBestSpotsRecursive [depth={}]: list gridPoints has size {}", searchParams.depth(), gridPoints.size());
 
-        LocationsWithBrightnessResponse locationsWithBrightnessResponse = getBrightnessForLocations(gridPoints);
-        Set<String> messages = new HashSet<>(locationsWithBrightnessResponse.getAdditionalMessages());
-        Set<LocationConditions> brightestSpots = getTopLocationConditions(locationsWithBrightnessResponse.getLocationsWithBrightness());
+        Set<String> messages = new HashSet<>();
+        CandidateBuffer candidates = getBrightnessForUnvisited(searchParams.searchContext().session(), searchParams.depth(),
+                gridPoints, messages);
+        Set<LocationConditions> brightestSpots = getTopCandidates(candidates).toLocations();
 
         if (brightestSpots.isEmpty()) {
             log.debug("searchBestSpotsRecursive [depth={}]: list brightestSpots is empty", searchParams.depth());
@@ -305,6 +438,7 @@ public class AstroSpotServiceImpl implements AstroSpotService {
                 .maxDepth(searchParams.searchContext().maxDepth())
                 .gridDiv(searchParams.searchContext().gridDiv())
                 .searchArea(searchParams.searchContext().searchArea())
+                .session(searchParams.searchContext().session())
                 .build();
         GridSize nextGrid = getNextGrid(searchParams);
         SearchParams nextSearchParams = SearchParams.builder()
@@ -317,67 +451,145 @@ public class AstroSpotServiceImpl implements AstroSpotService {
         return searchBestSpotsRecursive(nextSearchParams);
     }
 
+    /**
+     * Looks up only the grid points no other branch of the request has claimed yet. Points claimed by another branch
+     * are answered from the request's {@link VisitedCells}, waiting for that branch when its lookup is still running.
+     * Claims that got no answer are released, so they never leave other branches waiting. Messages about the lookup
+     * are added to {@code messages}.
+     */
+    CandidateBuffer getBrightnessForUnvisited(SearchSession session, int depth, GridPoints gridPoints, Set<String> messages) {
+        VisitedCells visitedCells = session.visitedCells();
+        LongHashSet claimed = new LongHashSet(gridPoints.size());
+        long[] unvisited = new long[gridPoints.size()];
+        long[] claimedElsewhere = new long[gridPoints.size()];
+        int unvisitedCount = 0;
+        int claimedElsewhereCount = 0;
+        CandidateBuffer candidates = new CandidateBuffer(gridPoints.size());
+        for (int i = 0; i < gridPoints.size(); i++) {
+            long cellKey = gridPoints.key(i);
+            if (visitedCells.claim(cellKey)) {
+                claimed.add(cellKey);
+                unvisited[unvisitedCount++] = cellKey;
+            } else if (!claimed.contains(cellKey)) {
+                claimedElsewhere[claimedElsewhereCount++] = cellKey;
+            }
+        }
+        visitedCells.record(depth, gridPoints.size(), claimedElsewhereCount);
+        log.debug("getBrightnessForUnvisited [depth={}]: {} of {} grid points already visited", depth,
+                claimedElsewhereCount, gridPoints.size());
+
+        try {
+            LightPollutionBatchResponse batchResponse = unvisitedCount == 0
+                    ? null
+                    : lookUpLightPollution(toCoordinates(unvisited, unvisitedCount), messages);
+            if (batchResponse != null) {
+                batchResponse.lightPollution().forEach((coordinate, info) -> {
+                    long cellKey = GridCell.key(coordinate);
+                    visitedCells.resolve(cellKey, info.relativeBrightness());
+                    candidates.add(cellKey, info.relativeBrightness());
+                });
+                batchResponse.noData().forEach(coordinate -> visitedCells.resolve(GridCell.key(coordinate), Double.NaN));
+            }
+        } finally {
+            for (int i = 0; i < unvisitedCount; i++) {
+                visitedCells.release(unvisited[i]);
+            }
+        }
+
+        // Own claims are settled above, so waiting here cannot close a cycle between branches
+        for (int i = 0; i < claimedElsewhereCount; i++) {
+            long cellKey = claimedElsewhere[i];
+            double brightness = visitedCells.awaitBrightness(cellKey);
+            if (!Double.isNaN(brightness)) {
+                candidates.add(cellKey, brightness);
+            }
+        }
+        return candidates;
+    }
+
+    private static Set<Coordinate> toCoordinates(long[] cellKeys, int count) {
+        Set<Coordinate> coordinates = HashSet.newHashSet(count);
+        for (int i = 0; i < count; i++) {
+            coordinates.add(GridCell.coordinate(cellKeys[i]));
+        }
+        return coordinates;
+    }
+
     LocationsWithBrightnessResponse getBrightnessForLocations(Set<Coordinate> coordinates) {
+        Set<String> messages = new HashSet<>(Set.of());
+        LightPollutionBatchResponse batchResponse = lookUpLightPollution(coordinates, messages);
+        if (batchResponse == null) {
+            return new LocationsWithBrightnessResponse(Collections.emptySet(), messages);
+        }
+
+        Set<LocationConditions> locationsWithBrightness = batchResponse.lightPollution().entrySet().stream()
+                .map(entry -> new LocationConditions(entry.getKey(), entry.getValue().relativeBrightness(), null, null))
+                .collect(Collectors.toSet());
+        return new LocationsWithBrightnessResponse(locationsWithBrightness, messages);
+    }
+
+    /**
+     * Looks up the coordinates and adds messages about the lookup to {@code messages}. Returns {@code null} when
+     * nothing was looked up.
+     */
+    private LightPollutionBatchResponse lookUpLightPollution(Set<Coordinate> coordinates, Set<String> messages) {
         if (coordinates == null || coordinates.isEmpty()) {
             log.info("There is no coordinates to check.");
-            return new LocationsWithBrightnessResponse(Collections.emptySet(), Set.of("There is no coordinates to check."));
+            messages.add("There is no coordinates to check.");
+            return null;
         }
         if (topPercent <= 0) {
             log.warn("The percentage of coordinates examined is set below 0. Top {} coordinates will be taken into account.", topNumber);
-            return new LocationsWithBrightnessResponse(Collections.emptySet(), Set.of("The percentage of coordinates examined is set below 0."));
+            messages.add("The percentage of coordinates examined is set below 0.");
+            return null;
         }
         if (topPercent > 50) {
             log.warn("The percentage of coordinates examined is set to high ({}%). This may negatively impact performance.", topPercent);
         }
 
-        Set<String> messages = new HashSet<>(Set.of());
-        Set<LocationConditions> locationsWithBrightness = coordinates.parallelStream()
-                .distinct()
-                .map(coord -> {
-                    try {
-                        return lightPollutionService.getLightPollution(coord)
-                                .map(info -> new LocationConditions(coord, info.relativeBrightness(), null, null))
-                                .orElse(null);
-                    } catch (HttpClientErrorException.TooManyRequests e) {
-                        log.warn("Skipping coordinate {} due to 429 Too Many Requests", coord);
-                        messages.add(DarkestLocationsStatus.ANSWER_MAY_BE_INACCURATE_PLEASE_TRY_AGAIN_LATER.getMessage());
-                        return null;
-                    }
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toSet());
-        return new LocationsWithBrightnessResponse(locationsWithBrightness, messages);
+        LightPollutionBatchResponse batchResponse = lightPollutionService.getLightPollution(coordinates);
+        if (!batchResponse.rateLimited().isEmpty()) {
+            log.warn("Skipping {} coordinates due to 429 Too Many Requests", batchResponse.rateLimited().size());
+            messages.add(DarkestLocationsStatus.ANSWER_MAY_BE_INACCURATE_PLEASE_TRY_AGAIN_LATER.getMessage());
+        }
+        return batchResponse;
     }
 
     public Set<LocationConditions> getTopLocationConditions(Set<LocationConditions> locations) {
-        if (locations.isEmpty()) {
+        int finalSize = topCount(locations.size());
+        if (finalSize == 0) {
             return Collections.emptySet();
         }
 
-        List<LocationConditions> sortedList = locations.stream()
-                .sorted(Comparator.comparingDouble(LocationConditions::brightness))
-                .toList();
-
-        int limit = (int) Math.ceil(sortedList.size() * (topPercent / 100.0));
-        int finalSize = Math.min(Math.max(limit, topNumber), sortedList.size());
+        List<LocationConditions> top = TopLocationsSelection.select(new ArrayList<>(locations), finalSize, filterWithTies);
+        logTopSelection(top.size(), finalSize, locations.size());
+        return new LinkedHashSet<>(top);
+    }
 
+    /**
+     * Same selection as {@link #getTopLocationConditions} on the brightness column of the candidates.
+     */
+    CandidateBuffer getTopCandidates(CandidateBuffer candidates) {
+        int finalSize = topCount(candidates.size());
         if (finalSize == 0) {
-            return Collections.emptySet();
+            return new CandidateBuffer(0);
         }
 
-        if (filterWithTies) {
-            double thresholdBrightness = sortedList.get(finalSize - 1).brightness();
-
-            List<LocationConditions> extendedList = sortedList.stream()
-                    .takeWhile(loc -> loc.brightness() <= thresholdBrightness)
-                    .toList();
+        int[] top = TopLocationsSelection.select(candidates.brightness(), candidates.size(), finalSize, filterWithTies);
+        logTopSelection(top.length, finalSize, candidates.size());
+        return candidates.select(top);
+    }
 
-            log.debug("getTopLocationConditions() return {} of {} coordinates (with ties)", extendedList.size(), locations.size());
+    private int topCount(int size) {
+        int limit = (int) Math.ceil(size * (topPercent / 100.0));
+        return Math.min(Math.max(limit, topNumber), size);
+    }
 
-            return new LinkedHashSet<>(extendedList);
+    private void logTopSelection(int selected, int finalSize, int size) {
+        if (filterWithTies) {
+            log.debug("getTopLocationConditions() return {} of {} coordinates (with ties)", selected, size);
         } else {
-            log.debug("getTopLocationConditions() return {} of {} coordinates", finalSize, locations.size());
-            return new LinkedHashSet<>(sortedList.subList(0, finalSize));
+            log.debug("getTopLocationConditions() return {} of {} coordinates", finalSize, size);
         }
     }
 
@@ -387,120 +599,92 @@ public class AstroSpotServiceImpl implements AstroSpotService {
     }
 
     public Set<Coordinate> findPointsWithinRadius(SearchArea searchArea, SearchArea originSearchArea, GridSize gridSize) {
-        log.debug("findPointsWithinRadius called with center={} radiusKm={} gridSize={}", searchArea.center(), searchArea.radiusKm(), gridSize);
+        return gridPointsWithinRadius(searchArea, originSearchArea, gridSize).toCoordinates();
+    }
 
-        Set<Coordinate> coordinates = new HashSet<>();
+    /**
+     * Same points as {@link #findPointsWithinRadius}, as grid cell keys, without creating a {@code Coordinate} per
+     * point. With {@code astrospot.grid.lattice=hexagonal} the points lie on the hexagonal lattice of
+     * {@code gridSize}.
+     */
+    public GridPoints gridPointsWithinRadius(SearchArea searchArea, SearchArea originSearchArea, GridSize gridSize) {
+        log.debug("gridPointsWithinRadius called with center={} radiusKm={} gridSize={}", searchArea.center(), searchArea.radiusKm(), gridSize);
 
         if (searchArea.radiusKm() <= 0 || searchArea.center() == null) {
-            log.warn("findPointsWithinRadius: invalid parameters radiusKm={} center={}", searchArea.radiusKm(), searchArea.center());
-            return coordinates;
+            log.warn("gridPointsWithinRadius: invalid parameters radiusKm={} center={}", searchArea.radiusKm(), searchArea.center());
+            return GridPoints.empty();
         }
 
-        double centerLat = searchArea.center().latitude();
-        double centerLon = searchArea.center().longitude();
-
-        double radiusInDegrees = searchArea.radiusKm() / KM_PER_DEGREE;
-
-        double minLat = centerLat - radiusInDegrees;
-        double maxLat = centerLat + radiusInDegrees;
-        double minLon = centerLon - radiusInDegrees;
-        double maxLon = centerLon + radiusInDegrees;
-
-        double gridLatDeg = gridSize.latitudeDegrees();
-        double gridLonDeg = gridSize.longitudeDegrees();
-
-        double minLatGrid = alignToGridLower(minLat, gridLatDeg);
-        double maxLatGrid = alignToGridUpper(maxLat, gridLatDeg);
-        double minLonGrid = alignToGridLower(minLon, gridLonDeg);
-        double maxLonGrid = alignToGridUpper(maxLon, gridLonDeg);
-
-        for (double lat = minLatGrid; lat <= maxLatGrid; lat += gridLatDeg) {
-            for (double lon = minLonGrid; lon <= maxLonGrid; lon += gridLonDeg) {
-                double distance = distanceService.findDistance(new Coordinate(centerLat, centerLon), new Coordinate(lat, lon));
-                double distanceFromOrigin = distanceService.findDistance(originSearchArea.center(), new Coordinate(lat, lon));
-                if (distance <= searchArea.radiusKm() && distanceFromOrigin <= originSearchArea.radiusKm()) {
-                    coordinates.add(new Coordinate(lat, lon));
-                }
-                int coordinatesSize = coordinates.size();
-                if (log.isDebugEnabled() && coordinatesSize > 0 && coordinatesSize % 10 == 0) {
-                    log.debug("Generated {} points within radius {} km from center {}", coordinatesSize, searchArea.radiusKm(), searchArea.center());
-                }
-            }
-        }
-
-        if (coordinates.size() > 1000) {
-            log.warn("Large number of points generated ({}) - consider tuning gridSize or radius.", coordinates.size());
+        GridPoints points = GridPoints.withinRadius(searchArea, originSearchArea, gridSize, hexagonalGrid);
+        if (points.size() > 1000) {
+            log.warn("Large number of points generated ({}) - consider tuning gridSize or radius.", points.size());
         }
 
-        log.debug("Generated {} points within radius {} km from center {}", coordinates.size(), searchArea.radiusKm(), searchArea.center());
-        return coordinates;
+        log.debug("Generated {} points within radius {} km from center {}", points.size(), searchArea.radiusKm(), searchArea.center());
+        return points;
     }
 
-    private double alignToGridLower(double value, double gridStep) {
-        return Math.floor(value / gridStep) * gridStep;
+    /**
+     * Returns the distance within which spots found on the search grid belong to the same cluster: a little more than
+     * one diagonal grid step.
+     */
+    double clusterDistance(SearchParams searchParams) {
+        Coordinate center = searchParams.searchContext().searchArea().center();
+        double latDelta = searchParams.gridSize().latitudeDegrees();
+        double lonDelta = searchParams.gridSize().longitudeDegrees();
+
+        Coordinate pointB = new Coordinate(center.latitude() + latDelta, center.longitude() + lonDelta);
+
+        return straightLineDistanceService.findDistance(center, pointB) * 1.1;
     }
 
-    private double alignToGridUpper(double value, double gridStep) {
-        return Math.ceil(value / gridStep) * gridStep;
+    /**
+     * Returns the distance engine for clustering within one request: {@code straightLineDistanceService}, or with
+     * {@code astrospot.search.distance=local-projection} a tangent plane around the request's origin.
+     */
+    DistanceService distanceService(SearchParams searchParams) {
+        if (!localProjection) {
+            return straightLineDistanceService;
+        }
+        return new LocalProjectionDistanceService(searchParams.originSearchArea().center());
     }
 
-    List<LocationsCluster> clusterByProximity(Set<LocationConditions> points, double eps) {
+    /**
+     * Clusters the candidates like {@link #clusterByProximity}, building records only for the clustered points.
+     */
+    List<LocationsCluster> clusterCandidates(CandidateBuffer candidates, double eps, DistanceService distanceService) {
+        int[] components = ProximityClustering.components(candidates.latitudes(), candidates.longitudes(),
+                candidates.size(), null, eps, distanceService);
         List<LocationsCluster> clusters = new ArrayList<>();
-
-        for (LocationConditions point : points) {
-            LocationsCluster clusterToJoin = null;
-            for (LocationsCluster cluster : clusters) {
-                boolean close = cluster.getLocations().stream()
-                        .anyMatch(loc -> straightLineDistanceService.findDistance(loc.coordinate(), point.coordinate()) <= eps);
-                if (close) {
-                    clusterToJoin = cluster;
-                    break;
-                }
-            }
-            if (clusterToJoin != null) {
-                clusterToJoin.add(point);
-            } else {
-                clusters.add(new LocationsCluster(Set.of(point)));
+        for (int i = 0; i < candidates.size(); i++) {
+            if (components[i] == clusters.size()) {
+                clusters.add(new LocationsCluster());
             }
+            clusters.get(components[i]).add(candidates.location(i));
         }
+        return clusters;
+    }
 
-        return mergeOverlappingClusters(clusters, eps);
+    List<LocationsCluster> clusterByProximity(Set<LocationConditions> points, double eps) {
+        return clusterByProximity(points, eps, straightLineDistanceService);
     }
 
-    List<LocationsCluster> mergeOverlappingClusters(List<LocationsCluster> clusters, double eps) {
-        boolean merged;
-
-        do {
-            merged = false;
-            outerLoop:
-            for (int i = 0; i < clusters.size(); i++) {
-                LocationsCluster clusterA = clusters.get(i);
-                for (int j = i + 1; j < clusters.size(); j++) {
-                    LocationsCluster clusterB = clusters.get(j);
-                    if (clustersAreClose(clusterA, clusterB, eps)) {
-                        for (LocationConditions loc : clusterB.getLocations()) {
-                            clusterA.add(loc);
-                        }
-                        clusters.remove(j);
-                        merged = true;
-                        break outerLoop;
-                    }
-                }
-            }
-        } while (merged);
+    /**
+     * Groups the points into clusters of points chained by distances of at most {@code eps}.
+     */
+    List<LocationsCluster> clusterByProximity(Set<LocationConditions> points, double eps, DistanceService distanceService) {
+        return ProximityClustering.cluster(new ArrayList<>(points), null, eps, distanceService);
+    }
 
-        return clusters;
+    List<LocationsCluster> mergeOverlappingClusters(List<LocationsCluster> clusters, double eps) {
+        return mergeOverlappingClusters(clusters, eps, straightLineDistanceService);
     }
 
-    private boolean clustersAreClose(LocationsCluster a, LocationsCluster b, double eps) {
-        for (LocationConditions locA : a.getLocations()) {
-            for (LocationConditions locB : b.getLocations()) {
-                if (straightLineDistanceService.findDistance(locA.coordinate(), locB.coordinate()) <= eps) {
-                    return true;
-                }
-            }
-        }
-        return false;
+    /**
+     * Merges clusters that have points within {@code eps} of each other, directly or through other clusters.
+     */
+    List<LocationsCluster> mergeOverlappingClusters(List<LocationsCluster> clusters, double eps, DistanceService distanceService) {
+        return ProximityClustering.merge(clusters, eps, distanceService);
     }
 
     private GridSize getNextGrid(SearchParams searchParams) {
@@ -551,19 +735,86 @@ public class AstroSpotServiceImpl implements AstroSpotService {
         });
     }
 
-    private double calculateNewRadius(GridSize gridSize) {
-        double kmPerDegreeLatitude = 111.0;
-        double kmPerDegreeLongitude = 70.0;  // averaged for Poland (approx. 49-55°N)
+    /**
+     * Returns the radius of the sub-search around a spot at {@code latitude}: one and a half of the longer side of a
+     * cell of {@code gridSize} there.
+     */
+    double calculateNewRadius(GridSize gridSize, double latitude) {
+        double newRadius = gridSize.maxSideKm(latitude) * 1.5;
+        log.debug("calculateNewRadius for {} at latitude {}: {}", gridSize, latitude, newRadius);
+        return newRadius;
+    }
 
-        double sideNorthSouth = gridSize.latitudeDegrees() * kmPerDegreeLatitude;
-        double sideEastWest = gridSize.longitudeDegrees() * kmPerDegreeLongitude;
+    /**
+     * Runs the subtask on its own virtual thread while the request has fork slots left, otherwise on the calling
+     * thread. Waiting on a child never holds a pooled worker, and a request cannot fan out beyond its session bound.
+     */
+    protected <T> CompletableFuture<T> supplyAsync(SearchSession session, Supplier<T> supplier) {
+        if (!session.tryFork()) {
+            try {
+                return CompletableFuture.completedFuture(supplier.get());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                session.enter();
+                try {
+                    return supplier.get();
+                } finally {
+                    session.exit();
+                    session.joinFork();
+                }
+            }, executorService);
+        } catch (RuntimeException e) {
+            session.joinFork();
+            throw e;
+        }
+    }
 
-        double newRadius = Math.max(sideNorthSouth, sideEastWest) * 1.5;
-        log.debug("calculateNewRadius for {}: {}", gridSize, newRadius);
-        return newRadius;
+    /**
+     * Waits for the subtask until the request deadline. Once it passes, the session is cancelled and the subtask gets
+     * a short grace period to hand back what it found so far. Returns {@code false} if it did not finish in time.
+     */
+    private static boolean awaitWithinDeadline(SearchSession session, Future<?> future) {
+        try {
+            long remaining = session.remainingNanos();
+            if (remaining == Long.MAX_VALUE) {
+                future.get();
+            } else {
+                future.get(remaining, TimeUnit.NANOSECONDS);
+            }
+            return true;
+        } catch (ExecutionException | CancellationException e) {
+            return true;
+        } catch (TimeoutException | InterruptedException e) {
+            Thread.interrupted();
+            session.cancel();
+        }
+        try {
+            future.get(session.remainingGraceNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException | CancellationException | TimeoutException | InterruptedException e) {
+            log.trace("Subtask did not finish within the grace period", e);
+        }
+        return future.isDone();
     }
 
-    protected <T> CompletableFuture<T> supplyAsync(Supplier<T> supplier) {
-        return CompletableFuture.supplyAsync(supplier, executorService);
+    static SearchParams withSession(SearchParams searchParams) {
+        SearchContext searchContext = searchParams.searchContext();
+        if (searchContext == null || searchContext.session() != null) {
+            return searchParams;
+        }
+        return SearchParams.builder()
+                .searchContext(SearchContext.builder()
+                        .maxDepth(searchContext.maxDepth())
+                        .gridDiv(searchContext.gridDiv())
+                        .searchArea(searchContext.searchArea())
+                        .session(new SearchSession())
+                        .build())
+                .gridSize(searchParams.gridSize())
+                .depth(searchParams.depth())
+                .originSearchArea(searchParams.originSearchArea())
+                .build();
     }
 }
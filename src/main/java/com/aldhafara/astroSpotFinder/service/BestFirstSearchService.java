@@ -0,0 +1,201 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.DarkestLocationsResponse;
+import com.aldhafara.astroSpotFinder.model.DarkestLocationsStatus;
+import com.aldhafara.astroSpotFinder.model.GridCell;
+import com.aldhafara.astroSpotFinder.model.GridPoints;
+import com.aldhafara.astroSpotFinder.model.GridSize;
+import com.aldhafara.astroSpotFinder.model.LocationConditions;
+import com.aldhafara.astroSpotFinder.model.LocationsCluster;
+import com.aldhafara.astroSpotFinder.model.LocationsWithBrightnessResponse;
+import com.aldhafara.astroSpotFinder.model.ScoringParameters;
+import com.aldhafara.astroSpotFinder.model.SearchArea;
+import com.aldhafara.astroSpotFinder.model.SearchParams;
+import com.aldhafara.astroSpotFinder.model.SearchSession;
+import com.aldhafara.astroSpotFinder.model.SimplifiedLocationConditions;
+import com.aldhafara.astroSpotFinder.util.LongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StopWatch;
+import org.springframework.web.client.RestClientException;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Alternative to the depth-by-depth recursion of {@link AstroSpotServiceImpl}. Measured grid points wait in a priority
+ * queue, darkest first, and only the most promising ones are refined on the next, finer grid. The search stops when
+ * {@code astrospot.search.best-first.budget} grid points have been looked up, nothing above the maximum depth is left
+ * to refine, or the request time limit passes.
+ */
+@Service
+@Primary
+@ConditionalOnProperty(prefix = "astrospot.search", name = "engine", havingValue = "best-first")
+public class BestFirstSearchService implements AstroSpotService {
+
+    private static final Logger log = LoggerFactory.getLogger(BestFirstSearchService.class);
+
+    private static final Comparator<Candidate> MOST_PROMISING_FIRST = Comparator
+            .comparingDouble((Candidate candidate) -> candidate.location().brightness())
+            .thenComparingInt(Candidate::depth);
+
+    private final AstroSpotServiceImpl astroSpotService;
+    private final int budget;
+    private final int width;
+
+    public BestFirstSearchService(AstroSpotServiceImpl astroSpotService,
+                                  @Value("${astrospot.search.best-first.budget:1000}") int budget,
+                                  @Value("${astrospot.search.best-first.width:4}") int width) {
+        log.debug("Using BestFirstSearchService as AstroSpotService implementation");
+        this.astroSpotService = astroSpotService;
+        this.budget = Math.max(1, budget);
+        this.width = Math.max(1, width);
+    }
+
+    @Override
+    public DarkestLocationsResponse searchBestLocationsClusters(SearchParams searchParams) {
+        SearchParams params = AstroSpotServiceImpl.withSession(searchParams);
+        if (astroSpotService.isInvalidSearchParams(params)) {
+            return new DarkestLocationsResponse(DarkestLocationsStatus.INVALID_PARAMETERS.getMessage(), Collections.emptyList());
+        }
+        SearchSession session = params.searchContext().session();
+        return astroSpotService.withinDeadline(session, () -> search(params, session));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, List<SimplifiedLocationConditions>>> getBestSpotsWithWeatherScoringClusters(
+            List<LocationsCluster> preliminaryLocationClusters,
+            ScoringParameters parameters,
+            String timezone) {
+        return astroSpotService.getBestSpotsWithWeatherScoringClusters(preliminaryLocationClusters, parameters, timezone);
+    }
+
+    private DarkestLocationsResponse search(SearchParams params, SearchSession session) {
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+
+        Frontier frontier = new Frontier(params, session);
+        Map<Coordinate, Integer> initial = new LinkedHashMap<>();
+        // Like the recursive engine, thicken the grid when the search area is smaller than its step
+        int seedDepth = params.depth();
+        GridPoints points = astroSpotService.gridPointsWithinRadius(params.searchContext().searchArea(),
+                params.originSearchArea(), params.gridSize());
+        while (points.isEmpty() && seedDepth < params.searchContext().maxDepth()) {
+            seedDepth++;
+            log.debug("Best-first search: no grid points at depth {}, thickening the grid", seedDepth - 1);
+            points = astroSpotService.gridPointsWithinRadius(params.searchContext().searchArea(),
+                    params.originSearchArea(), frontier.gridAt(seedDepth));
+        }
+        for (int i = 0; i < points.size(); i++) {
+            frontier.claim(points.key(i), seedDepth, initial);
+        }
+        frontier.measure(initial);
+
+        int rounds = 0;
+        while (frontier.remaining > 0 && !frontier.queue.isEmpty() && !session.isExpired()) {
+            Map<Coordinate, Integer> children = new LinkedHashMap<>();
+            for (int expanded = 0; expanded < width && !frontier.queue.isEmpty() && children.size() < frontier.remaining; ) {
+                Candidate candidate = frontier.queue.poll();
+                if (candidate.depth() >= params.searchContext().maxDepth()) {
+                    continue;
+                }
+                GridSize grid = frontier.gridAt(candidate.depth());
+                SearchArea area = new SearchArea(candidate.location().coordinate(), astroSpotService.calculateNewRadius(grid,
+                        candidate.location().coordinate().latitude()));
+                GridPoints subGrid = astroSpotService.gridPointsWithinRadius(area, params.originSearchArea(),
+                        frontier.gridAt(candidate.depth() + 1));
+                for (int i = 0; i < subGrid.size(); i++) {
+                    frontier.claim(subGrid.key(i), candidate.depth() + 1, children);
+                }
+                expanded++;
+            }
+            frontier.measure(children);
+            rounds++;
+        }
+
+        Set<String> messages = frontier.messages;
+        if (session.isExpired()) {
+            messages.add(DarkestLocationsStatus.SEARCH_TIME_LIMIT_REACHED.getMessage());
+        } else if (frontier.remaining <= 0 && frontier.queue.stream().anyMatch(c -> c.depth() < params.searchContext().maxDepth())) {
+            messages.add(DarkestLocationsStatus.LOOKUP_BUDGET_SPENT.getMessage());
+        }
+
+        Set<LocationConditions> best = astroSpotService.getTopLocationConditions(frontier.measured);
+        if (best.isEmpty()) {
+            messages.add(DarkestLocationsStatus.LIST_BRIGHTEST_SPOTS_IS_EMPTY.getMessage());
+        }
+        List<LocationsCluster> clusters = astroSpotService.clusterByProximity(best, astroSpotService.clusterDistance(params),
+                astroSpotService.distanceService(params));
+
+        stopWatch.stop();
+        log.info("Best-first search finished in {} ms after {} rounds, {} of {} lookups used, depth reached {}, clusters size:{}",
+                stopWatch.getTotalTimeMillis(), rounds, budget - Math.max(0, frontier.remaining), budget,
+                session.depthReached(), clusters.size());
+        return new DarkestLocationsResponse(astroSpotService.getAdditionalMessage(messages), clusters, session.depthReached());
+    }
+
+    private record Candidate(LocationConditions location, int depth) {
+    }
+
+    private final class Frontier {
+        private final SearchParams params;
+        private final SearchSession session;
+        private final PriorityQueue<Candidate> queue = new PriorityQueue<>(MOST_PROMISING_FIRST);
+        private final Set<LocationConditions> measured = new HashSet<>();
+        private final Set<String> messages = new HashSet<>();
+        private final LongHashSet visited = new LongHashSet();
+        private int remaining = budget;
+
+        private Frontier(SearchParams params, SearchSession session) {
+            this.params = params;
+            this.session = session;
+        }
+
+        private GridSize gridAt(int depth) {
+            double divisor = Math.pow(params.searchContext().gridDiv(), depth - params.depth());
+            return new GridSize(params.gridSize().latitudeDegrees() / divisor, params.gridSize().longitudeDegrees() / divisor);
+        }
+
+        private void claim(long cellKey, int depth, Map<Coordinate, Integer> batch) {
+            if (batch.size() < remaining && visited.add(cellKey)) {
+                batch.put(GridCell.coordinate(cellKey), depth);
+            }
+        }
+
+        private void measure(Map<Coordinate, Integer> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            remaining -= batch.size();
+            LocationsWithBrightnessResponse response;
+            try {
+                response = astroSpotService.getBrightnessForLocations(batch.keySet());
+            } catch (RestClientException e) {
+                if (!session.isExpired()) {
+                    throw e;
+                }
+                log.debug("Best-first lookup of {} points abandoned at the time limit", batch.size(), e);
+                return;
+            }
+            messages.addAll(response.getAdditionalMessages());
+            for (LocationConditions location : response.getLocationsWithBrightness()) {
+                int depth = batch.getOrDefault(location.coordinate(), params.searchContext().maxDepth());
+                measured.add(location);
+                queue.add(new Candidate(location, depth));
+                session.reached(depth);
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import com.aldhafara.astroSpotFinder.configuration.PrefetchConfig;
+import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.GridCell;
+import com.aldhafara.astroSpotFinder.model.GridSize;
+import com.aldhafara.astroSpotFinder.model.LightPollutionBatchResponse;
+import com.aldhafara.astroSpotFinder.model.SearchArea;
+import com.aldhafara.astroSpotFinder.util.LongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StopWatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fills the light pollution cache for configured regions in the background, at startup and then every
+ * {@code astrospot.prefetch.refresh-interval}. Each region is walked on the same grids a search centred on it uses for
+ * depths 0 to {@code astrospot.prefetch.depth} and looked up in batches, throttled to
+ * {@code astrospot.prefetch.points-per-second}.
+ */
+@Service
+@ConditionalOnProperty(prefix = "astrospot.prefetch", name = "enabled", havingValue = "true")
+public class CachePrefetchService implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(CachePrefetchService.class);
+
+    private final AstroSpotServiceImpl astroSpotService;
+    private final LightPollutionService lightPollutionService;
+    private final PrefetchConfig config;
+    private final GridSize gridSize;
+    private final double gridReferenceLatitude;
+    private final int gridDiv;
+    private final ScheduledExecutorService scheduler;
+    private volatile int plannedPoints;
+    private volatile int resolvedPoints;
+    private volatile boolean warm;
+
+    public CachePrefetchService(AstroSpotServiceImpl astroSpotService,
+                                LightPollutionService lightPollutionService,
+                                PrefetchConfig config,
+                                @Value("${astrospot.grid.latitude.size}") double gridLatDeg,
+                                @Value("${astrospot.grid.longitude.size}") double gridLonDeg,
+                                @Value("${astrospot.grid.longitude.reference-latitude:52}") double gridReferenceLatitude,
+                                @Value("${astrospot.grid.step.divisor}") int gridDiv) {
+        this.astroSpotService = astroSpotService;
+        this.lightPollutionService = lightPollutionService;
+        this.config = config;
+        this.gridSize = new GridSize(gridLatDeg, gridLonDeg);
+        this.gridReferenceLatitude = gridReferenceLatitude;
+        this.gridDiv = gridDiv;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cache-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        long refreshMillis = config.refreshInterval().toMillis();
+        if (refreshMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::prefetchSafely, 0, refreshMillis, TimeUnit.MILLISECONDS);
+        } else {
+            scheduler.execute(this::prefetchSafely);
+        }
+    }
+
+    /**
+     * Returns the share of planned grid points answered, with data or confirmed to have none, by the last completed or
+     * currently running pass. Points that were rate limited or whose lookup failed do not count.
+     */
+    public double coverage() {
+        int planned = plannedPoints;
+        return planned == 0 ? (warm ? 1.0 : 0.0) : (double) resolvedPoints / planned;
+    }
+
+    /**
+     * Returns {@code true} once a pass has resolved at least {@code astrospot.prefetch.coverage-threshold} of its
+     * points. Later refresh passes do not turn it back to {@code false}.
+     */
+    public boolean isWarm() {
+        return warm;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    void prefetch() {
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+
+        List<Coordinate> points = plan();
+        plannedPoints = points.size();
+        resolvedPoints = 0;
+        if (points.isEmpty()) {
+            log.warn("Prefetch is enabled but no grid points are planned, check astrospot.prefetch.regions");
+            warm = true;
+            return;
+        }
+        log.info("Prefetching light pollution for {} grid points in {} regions", points.size(), config.regions().size());
+
+        int batchSize = Math.max(1, config.batchSize());
+        long nanosPerPoint = TimeUnit.SECONDS.toNanos(1) / Math.max(1, config.pointsPerSecond());
+        for (int from = 0; from < points.size(); from += batchSize) {
+            List<Coordinate> batch = points.subList(from, Math.min(from + batchSize, points.size()));
+            long started = System.nanoTime();
+
+            LightPollutionBatchResponse response = lightPollutionService.getLightPollution(batch);
+            resolvedPoints += response.lightPollution().size() + response.noData().size();
+            updateWarm();
+
+            long pause = nanosPerPoint * batch.size() - (System.nanoTime() - started);
+            if (!response.rateLimited().isEmpty()) {
+                log.warn("Prefetch rate limited for {} of {} points, slowing down", response.rateLimited().size(), batch.size());
+                pause = Math.max(pause, 0) + nanosPerPoint * batch.size();
+            }
+            if (pause > 0 && !sleep(pause)) {
+                return;
+            }
+        }
+        updateWarm();
+
+        stopWatch.stop();
+        log.info("Prefetch finished in {}ms, coverage {}/{}", stopWatch.getTotalTimeMillis(), resolvedPoints, plannedPoints);
+    }
+
+    List<Coordinate> plan() {
+        List<Coordinate> points = new ArrayList<>();
+        LongHashSet seen = new LongHashSet();
+        for (PrefetchConfig.Region region : config.regions()) {
+            SearchArea area = new SearchArea(new Coordinate(region.latitude(), region.longitude()), region.radiusKm());
+            GridSize grid = GridSize.atLatitude(gridSize.latitudeDegrees(), gridSize.longitudeDegrees(),
+                    gridReferenceLatitude, region.latitude());
+            for (int depth = 0; depth <= config.depth(); depth++) {
+                for (Coordinate point : astroSpotService.findPointsWithinRadius(area, area, grid)) {
+                    if (seen.add(GridCell.key(point))) {
+                        points.add(point);
+                    }
+                }
+                grid = new GridSize(grid.latitudeDegrees() / gridDiv, grid.longitudeDegrees() / gridDiv);
+            }
+        }
+        return points;
+    }
+
+    private void prefetchSafely() {
+        try {
+            prefetch();
+        } catch (RuntimeException e) {
+            log.error("Light pollution prefetch failed", e);
+        }
+    }
+
+    private void updateWarm() {
+        if (!warm && coverage() >= config.coverageThreshold()) {
+            warm = true;
+            log.info("Light pollution cache is warm, coverage {}/{}", resolvedPoints, plannedPoints);
+        }
+    }
+
+    private static boolean sleep(long nanos) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
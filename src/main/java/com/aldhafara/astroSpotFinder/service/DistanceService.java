@@ -5,4 +5,14 @@ import com.aldhafara.astroSpotFinder.model.Coordinate;
 public interface DistanceService {
 
     double findDistance(Coordinate pointA, Coordinate pointB);
+
+    /**
+     * Writes to {@code out[i]} the distance in kilometres from {@code origin} to ({@code latitudes[i]},
+     * {@code longitudes[i]}) for the first {@code count} points.
+     */
+    default void distancesFrom(Coordinate origin, double[] latitudes, double[] longitudes, int count, double[] out) {
+        for (int i = 0; i < count; i++) {
+            out[i] = findDistance(origin, new Coordinate(latitudes[i], longitudes[i]));
+        }
+    }
 }
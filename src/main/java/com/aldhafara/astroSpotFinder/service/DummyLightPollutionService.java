@@ -1,35 +1,65 @@
 package com.aldhafara.astroSpotFinder.service;
 
 import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.GridCell;
+import com.aldhafara.astroSpotFinder.model.LightPollutionBatchResponse;
 import com.aldhafara.astroSpotFinder.model.LightPollutionInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @ConditionalOnProperty(prefix = "lightpollutionservice", name = "provider", havingValue="dummy", matchIfMissing = false)
 public class DummyLightPollutionService implements LightPollutionService {
 
     private static final Logger log = LoggerFactory.getLogger(DummyLightPollutionService.class);
+    private static final String CACHE_NAME = "lightPollution.dummy";
+
+    @Autowired(required = false)
+    private CacheManager cacheManager;
 
     public DummyLightPollutionService() {
         log.debug("Using DummyLightPollutionService as LightPollutionService implementation");
     }
 
     @Override
-    @Cacheable("lightPollution.dummy")
+    @Cacheable(value = CACHE_NAME, key = LightPollutionServiceImpl.CELL_KEY)
     public Optional<LightPollutionInfo> getLightPollution(Coordinate coordinate) {
+        return Optional.of(generateLightPollution(coordinate));
+    }
+
+    @Override
+    public LightPollutionBatchResponse getLightPollution(Collection<Coordinate> coordinates) {
+        Cache cache = cacheManager != null ? cacheManager.getCache(CACHE_NAME) : null;
+        Map<Coordinate, LightPollutionInfo> results = new HashMap<>();
+        for (Coordinate coordinate : coordinates) {
+            LightPollutionInfo info = cache != null
+                    ? cache.get(GridCell.key(coordinate), () -> generateLightPollution(coordinate))
+                    : generateLightPollution(coordinate);
+            results.put(coordinate, info);
+        }
+        return new LightPollutionBatchResponse(results, Set.of());
+    }
+
+    private LightPollutionInfo generateLightPollution(Coordinate coordinate) {
         double value = Math.random() * 255;
         double brightness = Math.round(value * 10.0) / 10.0;
         log.info("Use DummyLightPollutionService receiving response for {} : {}", coordinate, brightness);
-        return Optional.of(new LightPollutionInfo(
+        return new LightPollutionInfo(
                 coordinate.latitude(),
                 coordinate.longitude(),
                 brightness
-        ));
+        );
     }
 }
@@ -1,10 +1,19 @@
 package com.aldhafara.astroSpotFinder.service;
 
 import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.LightPollutionBatchResponse;
 import com.aldhafara.astroSpotFinder.model.LightPollutionInfo;
 
+import java.util.Collection;
 import java.util.Optional;
 
 public interface LightPollutionService {
     Optional<LightPollutionInfo> getLightPollution(Coordinate coordinate);
+
+    /**
+     * Looks up light pollution for many coordinates at once. Coordinates answered without data are reported in
+     * {@link LightPollutionBatchResponse#noData()}, coordinates rejected with HTTP 429 in
+     * {@link LightPollutionBatchResponse#rateLimited()}; coordinates whose lookup failed are in neither.
+     */
+    LightPollutionBatchResponse getLightPollution(Collection<Coordinate> coordinates);
 }
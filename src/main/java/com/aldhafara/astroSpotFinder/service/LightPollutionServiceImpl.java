@@ -3,99 +3,434 @@ package com.aldhafara.astroSpotFinder.service;
 import com.aldhafara.astroSpotFinder.messaging.LightPollutionErrorEvent;
 import com.aldhafara.astroSpotFinder.messaging.LightPollutionErrorKafkaProducer;
 import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.GridCell;
+import com.aldhafara.astroSpotFinder.model.LightPollutionBatchResponse;
 import com.aldhafara.astroSpotFinder.model.LightPollutionInfo;
+import com.aldhafara.astroSpotFinder.upstream.AdaptiveConcurrencyLimiter;
+import com.aldhafara.astroSpotFinder.upstream.BoundedIoExecutor;
+import com.aldhafara.astroSpotFinder.upstream.HedgedRequests;
+import com.aldhafara.astroSpotFinder.util.LongHashSet;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StopWatch;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.net.URI;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Service
 @ConditionalOnProperty(prefix = "lightpollutionservice", name = "provider", havingValue = "real", matchIfMissing = true)
 public class LightPollutionServiceImpl implements LightPollutionService {
 
     private static final Logger log = LoggerFactory.getLogger(LightPollutionServiceImpl.class);
+    private static final String CACHE_NAME = "lightPollution";
+    static final String CELL_KEY = "T(com.aldhafara.astroSpotFinder.model.GridCell).key(#coordinate)";
+    private static final Set<HttpStatus> BULK_UNSUPPORTED_STATUSES = Set.of(
+            HttpStatus.NOT_FOUND, HttpStatus.METHOD_NOT_ALLOWED, HttpStatus.NOT_IMPLEMENTED);
+    private static final String SINGLE_REQUEST = "single";
+    private static final String BATCH_REQUEST = "batch";
+
     private final RestTemplate restTemplate;
     private final String serviceUrl;
+    private final int batchSize;
+    private volatile boolean bulkSupported;
+    private final ConcurrentMap<Long, CompletableFuture<Optional<LightPollutionInfo>>> inFlight = new ConcurrentHashMap<>();
+    private final Counter upstreamLookups;
+    private final Counter coalescedLookups;
+    private final Counter storedLookups;
+    private final Timer singleRequests;
+    private final Timer batchRequests;
     @Autowired(required = false)
     private LightPollutionErrorKafkaProducer kafkaProducer;
+    @Autowired(required = false)
+    private CacheManager cacheManager;
+    @Autowired(required = false)
+    private PersistentBrightnessStore brightnessStore;
+    @Autowired(required = false)
+    @Qualifier("lightPollutionLimiter")
+    private AdaptiveConcurrencyLimiter limiter;
+    @Autowired(required = false)
+    @Qualifier("lightPollutionHedging")
+    private HedgedRequests hedging;
+    @Autowired(required = false)
+    private BoundedIoExecutor ioExecutor;
 
-    public LightPollutionServiceImpl(RestTemplate restTemplate,
-                                     @Value("${lightpollutionservice.url}") String serviceUrl) {
+    public LightPollutionServiceImpl(@Qualifier("lightPollutionRestTemplate") RestTemplate restTemplate,
+                                     @Value("${lightpollutionservice.url}") String serviceUrl,
+                                     @Value("${lightpollutionservice.batch.enabled:true}") boolean batchEnabled,
+                                     @Value("${lightpollutionservice.batch.size:500}") int batchSize,
+                                     MeterRegistry meterRegistry) {
         log.debug("Using LightPollutionServiceImpl as LightPollutionService implementation");
         this.restTemplate = restTemplate;
         this.serviceUrl = serviceUrl;
+        this.bulkSupported = batchEnabled;
+        this.batchSize = Math.max(1, batchSize);
+        this.upstreamLookups = Counter.builder("lightpollution.lookups.upstream")
+                .description("Coordinates requested from LightPollutionService")
+                .register(meterRegistry);
+        this.coalescedLookups = Counter.builder("lightpollution.lookups.coalesced")
+                .description("Lookups that joined an identical in-flight request instead of calling LightPollutionService")
+                .register(meterRegistry);
+        this.storedLookups = Counter.builder("lightpollution.lookups.store")
+                .description("Lookups served from the persistent brightness store instead of calling LightPollutionService")
+                .register(meterRegistry);
+        meterRegistry.gauge("lightpollution.lookups.inflight", inFlight, Map::size);
+        this.singleRequests = Timer.builder("lightpollution.upstream.requests")
+                .description("Latency of LightPollutionService calls, i.e. the load latency of the lightPollution cache")
+                .tag("type", SINGLE_REQUEST)
+                .register(meterRegistry);
+        this.batchRequests = Timer.builder("lightpollution.upstream.requests")
+                .description("Latency of LightPollutionService calls, i.e. the load latency of the lightPollution cache")
+                .tag("type", BATCH_REQUEST)
+                .register(meterRegistry);
     }
 
     @Override
-    @Cacheable("lightPollution")
+    @Cacheable(value = CACHE_NAME, key = CELL_KEY)
     public Optional<LightPollutionInfo> getLightPollution(Coordinate coordinate) {
-        StopWatch stopWatch = new StopWatch();
-        stopWatch.start();
+        long cellKey = GridCell.key(coordinate);
+        CompletableFuture<Optional<LightPollutionInfo>> flight = new CompletableFuture<>();
+        CompletableFuture<Optional<LightPollutionInfo>> existing = inFlight.putIfAbsent(cellKey, flight);
+        if (existing != null) {
+            coalescedLookups.increment();
+            log.debug("Joining in-flight LightPollutionService request for {}", coordinate);
+            return await(existing);
+        }
 
-        URI uri = buildDarknessUrl(coordinate);
         try {
-            LightPollutionInfo response = restTemplate.getForObject(
-                    uri, LightPollutionInfo.class);
+            Optional<LightPollutionInfo> info = fromStore(coordinate, cellKey)
+                    .or(() -> fetchLightPollution(coordinate));
+            putInCache(getCache(), coordinate, info);
+            flight.complete(info);
+            return info;
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(cellKey, flight);
+        }
+    }
 
-            stopWatch.stop();
+    @Override
+    public LightPollutionBatchResponse getLightPollution(Collection<Coordinate> coordinates) {
+        BatchLookup lookup = new BatchLookup(getCache());
 
-            if (response == null) {
-                log.warn("LightPollutionService returned null response for coordinate {} in {}ms",
-                        coordinate, stopWatch.getTotalTimeMillis());
-                return Optional.empty();
+        Map<Coordinate, CompletableFuture<Optional<LightPollutionInfo>>> joined = new HashMap<>();
+        List<Coordinate> misses = new ArrayList<>();
+        LongHashSet seen = new LongHashSet(coordinates.size());
+        for (Coordinate coordinate : coordinates) {
+            long cellKey = GridCell.key(coordinate);
+            if (!seen.add(cellKey)) {
+                continue;
+            }
+            Cache.ValueWrapper cached = lookup.cache != null ? lookup.cache.get(cellKey) : null;
+            if (cached != null) {
+                if (cached.get() instanceof LightPollutionInfo info) {
+                    lookup.results.put(coordinate, info);
+                } else {
+                    lookup.noData.add(coordinate);
+                }
+                continue;
             }
+            CompletableFuture<Optional<LightPollutionInfo>> flight = new CompletableFuture<>();
+            CompletableFuture<Optional<LightPollutionInfo>> existing = inFlight.putIfAbsent(cellKey, flight);
+            if (existing != null) {
+                joined.put(coordinate, existing);
+                continue;
+            }
+            lookup.flights.put(coordinate, flight);
+            Optional<LightPollutionInfo> stored = fromStore(coordinate, cellKey);
+            if (stored.isPresent()) {
+                lookup.resolved(coordinate, stored);
+            } else {
+                misses.add(coordinate);
+            }
+        }
+        coalescedLookups.increment(joined.size());
+        log.debug("LightPollutionService batch lookup for {} coordinates, {} served from cache or store, {} joined in-flight requests",
+                coordinates.size(), lookup.results.size(), joined.size());
 
-            if (!isValidCoordinate(response.latitude(), response.longitude())) {
-                log.warn("LightPollutionService returned invalid coordinates {} for request {}, time: {}ms",
-                        response, coordinate, stopWatch.getTotalTimeMillis());
-                return Optional.empty();
+        try {
+            if (bulkSupported) {
+                forEachConcurrently(partition(misses), chunk -> fetchChunk(chunk, lookup));
+            } else {
+                fetchEach(misses, lookup);
             }
+        } finally {
+            lookup.flights.forEach((coordinate, flight) -> {
+                flight.complete(Optional.empty());
+                inFlight.remove(GridCell.key(coordinate), flight);
+            });
+        }
 
-            if (response.relativeBrightness() < 0.0 || response.relativeBrightness() > 255.0) {
-                log.warn("LightPollutionService returned out-of-range relativeBrightness {} for coordinate {}, time: {}ms",
-                        response.relativeBrightness(), coordinate, stopWatch.getTotalTimeMillis());
-                return Optional.empty();
+        joined.forEach((coordinate, flight) -> {
+            try {
+                await(flight).ifPresent(info -> lookup.results.put(coordinate, info));
+            } catch (HttpClientErrorException.TooManyRequests e) {
+                lookup.rateLimited.add(coordinate);
+            } catch (RuntimeException e) {
+                log.debug("Joined LightPollutionService request for {} failed", coordinate, e);
             }
+        });
+        return new LightPollutionBatchResponse(lookup.results, lookup.rateLimited, lookup.noData);
+    }
 
-            log.info("LightPollutionService successful response for {} in {}ms, relativeBrightness={}",
-                    coordinate, stopWatch.getTotalTimeMillis(), response.relativeBrightness());
+    private Optional<LightPollutionInfo> fetchLightPollution(Coordinate coordinate) {
+        try {
+            return requestLightPollution(coordinate);
+        } catch (HttpClientErrorException.TooManyRequests e) {
+            throw e;
+        } catch (RestClientException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw e;
+            }
+            return Optional.empty();
+        }
+    }
 
-            return Optional.of(response);
+    /**
+     * Same as {@link #fetchLightPollution(Coordinate)}, but a failed request is rethrown instead of being reported as a
+     * coordinate without data.
+     */
+    private Optional<LightPollutionInfo> requestLightPollution(Coordinate coordinate) {
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        upstreamLookups.increment();
+
+        URI uri = buildDarknessUrl(coordinate);
+        try {
+            LightPollutionInfo response = exchange(SINGLE_REQUEST, singleRequests, () -> restTemplate.getForObject(
+                    uri, LightPollutionInfo.class));
+
+            stopWatch.stop();
+
+            Optional<LightPollutionInfo> validated = validate(response, coordinate, stopWatch.getTotalTimeMillis());
+            validated.ifPresent(info -> persist(coordinate, info));
+            validated.ifPresent(info -> log.info("LightPollutionService successful response for {} in {}ms, relativeBrightness={}",
+                    coordinate, stopWatch.getTotalTimeMillis(), info.relativeBrightness()));
+            return validated;
 
         } catch (HttpClientErrorException.TooManyRequests e) {
             stopWatch.stop();
             log.warn("429 Too Many Requests for coordinate {}: will NOT cache this error", coordinate);
-            if (kafkaProducer != null) {
-                LightPollutionErrorEvent event = create429EventPayload(coordinate, e.getMessage());
-                kafkaProducer.sendEvent(event);
-            }
+            publish429Event(List.of(coordinate), e.getMessage());
             throw e;
         } catch (RestClientException e) {
             stopWatch.stop();
+            if (Thread.currentThread().isInterrupted()) {
+                log.debug("LightPollutionService request for coordinate {} cancelled after {}ms", coordinate, stopWatch.getTotalTimeMillis());
+                throw e;
+            }
             log.error("LightPollutionService request failed for coordinate {} (URL: {}) in {}ms",
                     coordinate, uri, stopWatch.getTotalTimeMillis(), e);
+            throw e;
+        }
+    }
+
+    /**
+     * Runs on an I/O task already holding a permit, so the per-point fallback stays on this task: fanning it out again
+     * would wait for permits held by the chunks themselves.
+     */
+    private void fetchChunk(List<Coordinate> chunk, BatchLookup lookup) {
+        if (!bulkSupported) {
+            chunk.forEach(coordinate -> fetchOne(coordinate, lookup));
+            return;
+        }
+
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        upstreamLookups.increment(chunk.size());
+
+        URI uri = buildBatchDarknessUrl();
+        try {
+            LightPollutionInfo[] response = exchange(BATCH_REQUEST, batchRequests, () -> restTemplate.postForObject(uri, chunk, LightPollutionInfo[].class));
+
+            stopWatch.stop();
+
+            if (response == null || response.length != chunk.size()) {
+                log.warn("LightPollutionService returned {} results for batch of {} coordinates in {}ms",
+                        response == null ? null : response.length, chunk.size(), stopWatch.getTotalTimeMillis());
+                return;
+            }
+
+            for (int i = 0; i < chunk.size(); i++) {
+                Coordinate coordinate = chunk.get(i);
+                Optional<LightPollutionInfo> validated = validate(response[i], coordinate, stopWatch.getTotalTimeMillis());
+                validated.ifPresent(info -> persist(coordinate, info));
+                lookup.resolved(coordinate, validated);
+            }
+            log.info("LightPollutionService successful batch response for {} coordinates in {}ms",
+                    chunk.size(), stopWatch.getTotalTimeMillis());
+
+        } catch (HttpClientErrorException.TooManyRequests e) {
+            stopWatch.stop();
+            log.warn("429 Too Many Requests for batch of {} coordinates: will NOT cache this error", chunk.size());
+            chunk.forEach(coordinate -> lookup.rateLimited(coordinate, e));
+            publish429Event(chunk, e.getMessage());
+        } catch (HttpStatusCodeException e) {
+            stopWatch.stop();
+            if (BULK_UNSUPPORTED_STATUSES.contains(HttpStatus.resolve(e.getStatusCode().value()))) {
+                log.warn("LightPollutionService has no bulk endpoint (URL: {}, status {}), falling back to per-point requests",
+                        uri, e.getStatusCode());
+                bulkSupported = false;
+                chunk.forEach(coordinate -> fetchOne(coordinate, lookup));
+            } else {
+                log.error("LightPollutionService batch request failed for {} coordinates (URL: {}) in {}ms",
+                        chunk.size(), uri, stopWatch.getTotalTimeMillis(), e);
+            }
+        } catch (RestClientException e) {
+            stopWatch.stop();
+            log.error("LightPollutionService batch request failed for {} coordinates (URL: {}) in {}ms",
+                    chunk.size(), uri, stopWatch.getTotalTimeMillis(), e);
+        }
+    }
+
+    private void fetchEach(List<Coordinate> coordinates, BatchLookup lookup) {
+        forEachConcurrently(coordinates, coordinate -> fetchOne(coordinate, lookup));
+    }
+
+    private void fetchOne(Coordinate coordinate, BatchLookup lookup) {
+        try {
+            lookup.resolved(coordinate, requestLightPollution(coordinate));
+        } catch (HttpClientErrorException.TooManyRequests e) {
+            lookup.rateLimited(coordinate, e);
+        } catch (RestClientException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw e;
+            }
+            lookup.failed(coordinate);
+        }
+    }
+
+    private <T> void forEachConcurrently(List<T> items, Consumer<T> task) {
+        if (ioExecutor != null) {
+            ioExecutor.forEach(items, task);
+        } else {
+            items.forEach(task);
+        }
+    }
+
+    private <T> T exchange(String requestType, Timer timer, Supplier<T> request) {
+        Supplier<T> limited = limiter != null
+                ? () -> limiter.call(requestType, () -> timer.record(request))
+                : () -> timer.record(request);
+        // Only single-point GETs are hedged; repeating a batch POST would double the load of the largest calls
+        return hedging != null && SINGLE_REQUEST.equals(requestType)
+                ? hedging.call(requestType, limited)
+                : limited.get();
+    }
+
+    private Optional<LightPollutionInfo> await(CompletableFuture<Optional<LightPollutionInfo>> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private Optional<LightPollutionInfo> validate(LightPollutionInfo response, Coordinate coordinate, long timeMillis) {
+        if (response == null) {
+            log.warn("LightPollutionService returned null response for coordinate {} in {}ms",
+                    coordinate, timeMillis);
+            return Optional.empty();
+        }
+
+        if (!isValidCoordinate(response.latitude(), response.longitude())) {
+            log.warn("LightPollutionService returned invalid coordinates {} for request {}, time: {}ms",
+                    response, coordinate, timeMillis);
+            return Optional.empty();
+        }
+
+        if (response.relativeBrightness() < 0.0 || response.relativeBrightness() > 255.0) {
+            log.warn("LightPollutionService returned out-of-range relativeBrightness {} for coordinate {}, time: {}ms",
+                    response.relativeBrightness(), coordinate, timeMillis);
             return Optional.empty();
         }
+        return Optional.of(response);
     }
 
-    private LightPollutionErrorEvent create429EventPayload(Coordinate coordinate, String errorMessage) {
+    private Optional<LightPollutionInfo> fromStore(Coordinate coordinate, long cellKey) {
+        if (brightnessStore == null) {
+            return Optional.empty();
+        }
+        float brightness = brightnessStore.get(cellKey);
+        if (Float.isNaN(brightness)) {
+            return Optional.empty();
+        }
+        storedLookups.increment();
+        return Optional.of(new LightPollutionInfo(coordinate.latitude(), coordinate.longitude(), brightness));
+    }
+
+    private void persist(Coordinate coordinate, LightPollutionInfo info) {
+        if (brightnessStore != null) {
+            brightnessStore.put(GridCell.key(coordinate), (float) info.relativeBrightness());
+        }
+    }
+
+    private Cache getCache() {
+        return cacheManager != null ? cacheManager.getCache(CACHE_NAME) : null;
+    }
+
+    private static void putInCache(Cache cache, Coordinate coordinate, Optional<LightPollutionInfo> info) {
+        if (cache != null) {
+            cache.put(GridCell.key(coordinate), info.orElse(null));
+        }
+    }
+
+    private List<List<Coordinate>> partition(List<Coordinate> coordinates) {
+        List<List<Coordinate>> chunks = new ArrayList<>();
+        for (int from = 0; from < coordinates.size(); from += batchSize) {
+            chunks.add(coordinates.subList(from, Math.min(from + batchSize, coordinates.size())));
+        }
+        return chunks;
+    }
+
+    private void publish429Event(List<Coordinate> coordinates, String errorMessage) {
+        if (kafkaProducer != null) {
+            LightPollutionErrorEvent event = create429EventPayload(coordinates, errorMessage);
+            kafkaProducer.sendEvent(event);
+        }
+    }
+
+    private LightPollutionErrorEvent create429EventPayload(List<Coordinate> coordinates, String errorMessage) {
         return new LightPollutionErrorEvent(
-                coordinate,
+                coordinates.getFirst(),
                 429,
                 Instant.now(),
-                errorMessage);
+                errorMessage,
+                List.copyOf(coordinates));
     }
 
     private URI buildDarknessUrl(Coordinate coordinate) {
@@ -106,7 +441,40 @@ public class LightPollutionServiceImpl implements LightPollutionService {
                 .toUri();
     }
 
+    private URI buildBatchDarknessUrl() {
+        return UriComponentsBuilder.fromUriString(serviceUrl + "/darkness/batch")
+                .build()
+                .toUri();
+    }
+
     private boolean isValidCoordinate(double lat, double lon) {
         return lat >= -90 && lat <= 90 && lon >= -180 && lon <= 180;
     }
+
+    private static final class BatchLookup {
+        private final Cache cache;
+        private final Map<Coordinate, LightPollutionInfo> results = new ConcurrentHashMap<>();
+        private final Set<Coordinate> rateLimited = ConcurrentHashMap.newKeySet();
+        private final Set<Coordinate> noData = ConcurrentHashMap.newKeySet();
+        private final Map<Coordinate, CompletableFuture<Optional<LightPollutionInfo>>> flights = new ConcurrentHashMap<>();
+
+        private BatchLookup(Cache cache) {
+            this.cache = cache;
+        }
+
+        private void resolved(Coordinate coordinate, Optional<LightPollutionInfo> info) {
+            putInCache(cache, coordinate, info);
+            info.ifPresentOrElse(value -> results.put(coordinate, value), () -> noData.add(coordinate));
+            flights.get(coordinate).complete(info);
+        }
+
+        private void rateLimited(Coordinate coordinate, HttpClientErrorException.TooManyRequests e) {
+            rateLimited.add(coordinate);
+            flights.get(coordinate).completeExceptionally(e);
+        }
+
+        private void failed(Coordinate coordinate) {
+            flights.get(coordinate).complete(Optional.empty());
+        }
+    }
 }
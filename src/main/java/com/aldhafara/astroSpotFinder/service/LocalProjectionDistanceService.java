@@ -0,0 +1,83 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import com.aldhafara.astroSpotFinder.model.Coordinate;
+
+/**
+ * Distances on a plane tangent to the Earth at the search origin. Points are mapped with the azimuthal equidistant
+ * projection, which keeps the distance and direction from the origin exact; distances between two projected points
+ * are then plain Euclidean arithmetic. For points within 150 km of the origin the relative error against
+ * {@link StraightLineDistanceService} stays below 0.01 % (about 1 m per 10 km), at any latitude.
+ * <p>
+ * Create one instance per request: it is immutable and holds only the trigonometry of the origin.
+ */
+public final class LocalProjectionDistanceService implements DistanceService {
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+
+    private final double originLongitude;
+    private final double sinOriginLatitude;
+    private final double cosOriginLatitude;
+
+    public LocalProjectionDistanceService(Coordinate origin) {
+        double originLatitude = Math.toRadians(origin.latitude());
+        this.originLongitude = Math.toRadians(origin.longitude());
+        this.sinOriginLatitude = Math.sin(originLatitude);
+        this.cosOriginLatitude = Math.cos(originLatitude);
+    }
+
+    @Override
+    public double findDistance(Coordinate pointA, Coordinate pointB) {
+        return distance(project(pointA), project(pointB));
+    }
+
+    /**
+     * Projects {@code origin} once for the whole batch.
+     */
+    @Override
+    public void distancesFrom(Coordinate origin, double[] latitudes, double[] longitudes, int count, double[] out) {
+        double[] projectedOrigin = project(origin);
+        for (int i = 0; i < count; i++) {
+            out[i] = distance(projectedOrigin, project(latitudes[i], longitudes[i]));
+        }
+    }
+
+    /**
+     * Returns the point on the tangent plane as {@code {x, y}} in kilometres east and north of the origin.
+     */
+    public double[] project(Coordinate point) {
+        return project(point.latitude(), point.longitude());
+    }
+
+    public double[] project(double latitudeDegrees, double longitudeDegrees) {
+        double latitude = Math.toRadians(latitudeDegrees);
+        double longitude = Math.toRadians(longitudeDegrees) - originLongitude;
+        double sinLatitude = Math.sin(latitude);
+        double cosLatitude = Math.cos(latitude);
+        double cosLongitude = Math.cos(longitude);
+
+        double cosAngle = sinOriginLatitude * sinLatitude + cosOriginLatitude * cosLatitude * cosLongitude;
+        double angle = Math.acos(Math.min(1.0, Math.max(-1.0, cosAngle)));
+        double scale = angle < 1e-9 ? EARTH_RADIUS_KM : EARTH_RADIUS_KM * angle / Math.sin(angle);
+        return new double[]{
+                scale * cosLatitude * Math.sin(longitude),
+                scale * (cosOriginLatitude * sinLatitude - sinOriginLatitude * cosLatitude * cosLongitude)
+        };
+    }
+
+    public static double distance(double[] pointA, double[] pointB) {
+        return Math.sqrt(squaredDistance(pointA, pointB));
+    }
+
+    /**
+     * Returns whether two projected points are at most {@code eps} kilometres apart, without a square root.
+     */
+    public static boolean isWithin(double[] pointA, double[] pointB, double eps) {
+        return squaredDistance(pointA, pointB) <= eps * eps;
+    }
+
+    private static double squaredDistance(double[] pointA, double[] pointB) {
+        double dx = pointA[0] - pointB[0];
+        double dy = pointA[1] - pointB[1];
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,316 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import com.aldhafara.astroSpotFinder.util.LongFloatHashMap;
+import com.aldhafara.astroSpotFinder.util.LongHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StopWatch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Append-only log of (cell key, brightness) records that survives restarts. The log is replayed into memory on a
+ * background thread at startup and new values are appended in batches by the same thread, so callers never block
+ * on disk writes. A truncated last record, e.g. after a crash, is dropped on load.
+ * <p>
+ * Once the log holds twice {@code maxEntries} records it is compacted on the same thread: only the latest value of the
+ * {@code maxEntries} most recently written cells is kept, both on disk and in memory, so neither grows without bound.
+ * Reads are not recorded, so recency means the last {@link #put}: a hot cell that is only ever served from the store
+ * is evicted before cells written after it, and is looked up upstream again the next time it is needed.
+ * {@code maxEntries} is limited to {@value #MAX_ENTRIES_LIMIT}, so the log read back for compaction fits in one buffer.
+ */
+@Component
+@ConditionalOnProperty(prefix = "lightpollutionservice.store", name = "path")
+public class PersistentBrightnessStore implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistentBrightnessStore.class);
+
+    static final int MAGIC = 0x4C505342;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 8;
+    static final int RECORD_BYTES = Long.BYTES + Float.BYTES;
+    private static final int READ_BUFFER_RECORDS = 64 * 1024;
+    private static final int WRITE_BUFFER_RECORDS = 1024;
+    static final int DEFAULT_MAX_ENTRIES = 1_000_000;
+    /**
+     * A quarter of the records that fit in one buffer: compaction starts at twice {@code maxEntries} records, and the
+     * rest leaves room for the records appended by the flush that crosses that threshold.
+     */
+    static final int MAX_ENTRIES_LIMIT = (Integer.MAX_VALUE - HEADER_BYTES) / RECORD_BYTES / 4;
+
+    private final Path path;
+    private final int maxEntries;
+    private FileChannel channel;
+    private final ExecutorService writer;
+    private final CompletableFuture<Void> loaded;
+    private LongFloatHashMap entries;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object pendingLock = new Object();
+    private ByteBuffer pending = ByteBuffer.allocate(WRITE_BUFFER_RECORDS * RECORD_BYTES);
+    private boolean flushScheduled;
+    private volatile boolean readOnly;
+    private long position;
+
+    public PersistentBrightnessStore(@Value("${lightpollutionservice.store.path}") String path,
+                                     @Value("${lightpollutionservice.store.max-entries:1000000}") int maxEntries) {
+        this(Path.of(path), maxEntries);
+    }
+
+    PersistentBrightnessStore(Path path) {
+        this(path, DEFAULT_MAX_ENTRIES);
+    }
+
+    PersistentBrightnessStore(Path path, int maxEntries) {
+        if (maxEntries > MAX_ENTRIES_LIMIT) {
+            throw new IllegalArgumentException("Brightness store max-entries " + maxEntries + " exceeds " + MAX_ENTRIES_LIMIT);
+        }
+        this.path = path;
+        this.maxEntries = Math.max(1, maxEntries);
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open brightness store " + path, e);
+        }
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "brightness-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.loaded = CompletableFuture.runAsync(() -> entries = load(), writer);
+    }
+
+    /**
+     * Returns the stored brightness for the cell, or {@link Float#NaN} when it has not been stored yet.
+     * Waits for the startup load to finish.
+     */
+    public float get(long cellKey) {
+        loaded.join();
+        lock.readLock().lock();
+        try {
+            return entries.get(cellKey);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stores the brightness for the cell. The value is visible to {@link #get(long)} immediately and written to
+     * disk in the background; unchanged values are not written again.
+     */
+    public void put(long cellKey, float brightness) {
+        loaded.join();
+        lock.writeLock().lock();
+        try {
+            if (entries.put(cellKey, brightness) == brightness || readOnly) {
+                return;
+            }
+            synchronized (pendingLock) {
+                if (pending.remaining() < RECORD_BYTES) {
+                    ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+                    larger.put(pending.flip());
+                    pending = larger;
+                }
+                pending.putLong(cellKey).putFloat(brightness);
+                if (!flushScheduled) {
+                    try {
+                        writer.execute(this::flush);
+                        flushScheduled = true;
+                    } catch (RejectedExecutionException e) {
+                        log.debug("Brightness store {} is closed, value for cell {} is not persisted", path, cellKey);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        loaded.join();
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("Brightness store writer did not finish in time, pending records may be lost");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private LongFloatHashMap load() {
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        try {
+            long fileSize = channel.size();
+            if (fileSize < HEADER_BYTES) {
+                writeHeader();
+                return new LongFloatHashMap();
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a brightness store (or unsupported version): " + path);
+            }
+
+            long records = (fileSize - HEADER_BYTES) / RECORD_BYTES;
+            position = HEADER_BYTES + records * RECORD_BYTES;
+            if (position != fileSize) {
+                log.warn("Brightness store {} ends with a truncated record, dropping {} bytes", path, fileSize - position);
+                channel.truncate(position);
+            }
+
+            LongFloatHashMap entries = new LongFloatHashMap((int) Math.min(records, Integer.MAX_VALUE / 2));
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_RECORDS * RECORD_BYTES);
+            for (long at = HEADER_BYTES; at < position; at += buffer.limit()) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), position - at));
+                readFully(buffer, at);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    entries.put(buffer.getLong(), buffer.getFloat());
+                }
+            }
+            stopWatch.stop();
+            log.info("Loaded {} brightness values from {} in {}ms", entries.size(), path, stopWatch.getTotalTimeMillis());
+            return entries;
+        } catch (IOException e) {
+            log.error("Cannot load brightness store {}, continuing without persistence", path, e);
+            readOnly = true;
+            return new LongFloatHashMap();
+        }
+    }
+
+    private void flush() {
+        ByteBuffer batch;
+        synchronized (pendingLock) {
+            batch = pending.flip();
+            pending = ByteBuffer.allocate(WRITE_BUFFER_RECORDS * RECORD_BYTES);
+            flushScheduled = false;
+        }
+        try {
+            int bytes = batch.remaining();
+            while (batch.hasRemaining()) {
+                channel.write(batch, position + batch.position());
+            }
+            position += bytes;
+        } catch (IOException e) {
+            log.error("Cannot append {} records to brightness store {}", batch.limit() / RECORD_BYTES, path, e);
+            return;
+        }
+        if ((position - HEADER_BYTES) / RECORD_BYTES >= 2L * maxEntries) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the log with the latest value of the {@code maxEntries} most recently written cells, in the order they
+     * were written, and drops the other cells from memory too. Runs on the writer thread, so the log does not change
+     * meanwhile; values put while it runs are still pending and are appended to the new log by the next flush.
+     */
+    private void compact() {
+        StopWatch stopWatch = new StopWatch();
+        stopWatch.start();
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        try {
+            int records = Math.toIntExact((position - HEADER_BYTES) / RECORD_BYTES);
+            ByteBuffer content = ByteBuffer.allocate(Math.multiplyExact(records, RECORD_BYTES));
+            readFully(content, HEADER_BYTES);
+
+            // Walk the log backwards and keep the last record of each cell until maxEntries cells are kept. Only puts
+            // reach the log, so a cell that was read often but written long ago is dropped here before cells written
+            // after it, however rarely those are read.
+            boolean[] kept = new boolean[records];
+            LongHashSet seen = new LongHashSet(maxEntries);
+            for (int i = records - 1; i >= 0 && seen.size() < maxEntries; i--) {
+                kept[i] = seen.add(content.getLong(i * RECORD_BYTES));
+            }
+            ByteBuffer retained = ByteBuffer.allocate(HEADER_BYTES + seen.size() * RECORD_BYTES).putInt(MAGIC).putInt(VERSION);
+            LongFloatHashMap retainedEntries = new LongFloatHashMap(seen.size());
+            for (int i = 0; i < records; i++) {
+                if (kept[i]) {
+                    long cellKey = content.getLong(i * RECORD_BYTES);
+                    float brightness = content.getFloat(i * RECORD_BYTES + Long.BYTES);
+                    retained.putLong(cellKey).putFloat(brightness);
+                    retainedEntries.put(cellKey, brightness);
+                }
+            }
+            retained.flip();
+            try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (retained.hasRemaining()) {
+                    out.write(retained, retained.position());
+                }
+                out.force(true);
+            }
+
+            lock.writeLock().lock();
+            try {
+                synchronized (pendingLock) {
+                    for (int at = 0; at < pending.position(); at += RECORD_BYTES) {
+                        long cellKey = pending.getLong(at);
+                        retainedEntries.put(cellKey, entries.get(cellKey));
+                    }
+                }
+                channel.close();
+                Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                position = retained.limit();
+                entries = retainedEntries;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            stopWatch.stop();
+            log.info("Compacted brightness store {} from {} to {} records in {}ms", path, records, seen.size(),
+                    stopWatch.getTotalTimeMillis());
+        } catch (IOException | ArithmeticException e) {
+            log.error("Cannot compact brightness store {}, continuing without persistence", path, e);
+            readOnly = true;
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).flip();
+        channel.truncate(0);
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        position = HEADER_BYTES;
+    }
+
+    private void readFully(ByteBuffer buffer, long at) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, at + buffer.position() - start) < 0) {
+                throw new IOException("Unexpected end of brightness store " + path);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports {@code WARMING} until the prefetch job has reached its coverage threshold. Add {@code prefetch} to the
+ * readiness group to keep traffic away from a node with a cold light pollution cache.
+ */
+@Component
+@ConditionalOnProperty(prefix = "astrospot.prefetch", name = "enabled", havingValue = "true")
+public class PrefetchHealthIndicator implements HealthIndicator {
+
+    public static final Status WARMING = new Status("WARMING", "Light pollution cache is being prefetched");
+
+    private final CachePrefetchService prefetchService;
+
+    public PrefetchHealthIndicator(CachePrefetchService prefetchService) {
+        this.prefetchService = prefetchService;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = prefetchService.isWarm() ? Health.up() : Health.status(WARMING);
+        return builder.withDetail("coverage", prefetchService.coverage()).build();
+    }
+}
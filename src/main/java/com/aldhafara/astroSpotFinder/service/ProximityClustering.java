@@ -0,0 +1,210 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.LocationConditions;
+import com.aldhafara.astroSpotFinder.model.LocationsCluster;
+import com.aldhafara.astroSpotFinder.util.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Groups points into eps-connected components: two points share a cluster when a chain of points, each within
+ * {@code eps} of the next, joins them. Points are bucketed into square cells a little wider than {@code eps} on a
+ * tangent plane, so only points in neighbouring cells are compared, and components are kept in a union-find. The
+ * distances deciding a join come from the given {@link DistanceService}, so the clusters are the same as those of a
+ * full pairwise scan with it. A {@link LocalProjectionDistanceService} is used as the plane itself: every point is
+ * projected once and joins are decided on the projected points.
+ */
+final class ProximityClustering {
+
+    /**
+     * Cells are 1 % wider than {@code eps}, which absorbs the error of the tangent plane, so a pair within
+     * {@code eps} never lands further apart than in neighbouring cells.
+     */
+    private static final double CELL_MARGIN = 1.01;
+    private static final double MIN_CELL_KM = 1e-6;
+
+    private ProximityClustering() {
+    }
+
+    /**
+     * Returns the eps-connected components of {@code points}, in the order of their first point. Points with the same
+     * {@code groups} value start in one component; pass {@code null} to start with every point on its own.
+     */
+    static List<LocationsCluster> cluster(List<LocationConditions> points, int[] groups, double eps, DistanceService distanceService) {
+        int size = points.size();
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        for (int i = 0; i < size; i++) {
+            latitudes[i] = points.get(i).coordinate().latitude();
+            longitudes[i] = points.get(i).coordinate().longitude();
+        }
+        int[] components = components(latitudes, longitudes, size, groups, eps, distanceService);
+
+        List<LocationsCluster> clusters = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            if (components[i] == clusters.size()) {
+                clusters.add(new LocationsCluster());
+            }
+            clusters.get(components[i]).add(points.get(i));
+        }
+        return clusters;
+    }
+
+    /**
+     * Merges clusters that have points within {@code eps} of each other, directly or through other clusters. Each
+     * merged cluster is built by appending whole input clusters, in the order of the input.
+     */
+    static List<LocationsCluster> merge(List<LocationsCluster> clusters, double eps, DistanceService distanceService) {
+        List<Set<LocationConditions>> members = new ArrayList<>(clusters.size());
+        int size = 0;
+        for (LocationsCluster cluster : clusters) {
+            Set<LocationConditions> locations = cluster.getLocations();
+            members.add(locations);
+            size += locations.size();
+        }
+        double[] latitudes = new double[size];
+        double[] longitudes = new double[size];
+        int[] groups = new int[size];
+        int[] firstPoint = new int[clusters.size()];
+        int point = 0;
+        for (int i = 0; i < clusters.size(); i++) {
+            firstPoint[i] = point;
+            for (LocationConditions location : members.get(i)) {
+                latitudes[point] = location.coordinate().latitude();
+                longitudes[point] = location.coordinate().longitude();
+                groups[point++] = i;
+            }
+        }
+        int[] components = components(latitudes, longitudes, size, groups, eps, distanceService);
+
+        List<LocationsCluster> merged = new ArrayList<>();
+        for (int i = 0; i < clusters.size(); i++) {
+            if (members.get(i).isEmpty()) {
+                continue;
+            }
+            int component = components[firstPoint[i]];
+            if (component == merged.size()) {
+                merged.add(new LocationsCluster());
+            }
+            merged.get(component).addAll(clusters.get(i));
+        }
+        return merged;
+    }
+
+    /**
+     * Returns for each of the first {@code size} points the index of its component. Components are numbered from 0
+     * in the order of their first point.
+     */
+    static int[] components(double[] latitudes, double[] longitudes, int size, int[] groups, double eps,
+                            DistanceService distanceService) {
+        int[] components = new int[size];
+        if (size == 0) {
+            return components;
+        }
+        int[] parent = new int[size];
+        for (int i = 0; i < size; i++) {
+            parent[i] = i;
+        }
+        if (groups != null) {
+            LongIntHashMap firstOfGroup = new LongIntHashMap(size);
+            for (int i = 0; i < size; i++) {
+                int first = firstOfGroup.get(groups[i]);
+                if (first == LongIntHashMap.MISSING) {
+                    firstOfGroup.put(groups[i], i);
+                } else {
+                    union(parent, first, i);
+                }
+            }
+        }
+
+        double cellKm = Math.max(eps * CELL_MARGIN, MIN_CELL_KM);
+        LocalProjectionDistanceService plane = distanceService instanceof LocalProjectionDistanceService projection
+                ? projection
+                : new LocalProjectionDistanceService(new Coordinate(latitudes[0], longitudes[0]));
+        boolean planar = plane == distanceService;
+        double[][] projected = new double[size][];
+        long[] cells = new long[size];
+        int[] next = new int[size];
+        LongIntHashMap heads = new LongIntHashMap(size);
+        for (int i = 0; i < size; i++) {
+            projected[i] = plane.project(latitudes[i], longitudes[i]);
+            cells[i] = cellKey((int) Math.floor(projected[i][0] / cellKm), (int) Math.floor(projected[i][1] / cellKm));
+            next[i] = heads.put(cells[i], i);
+        }
+
+        double[] candidateLatitudes = new double[size];
+        double[] candidateLongitudes = new double[size];
+        int[] candidates = new int[size];
+        double[] distances = new double[size];
+        for (int i = 0; i < size; i++) {
+            int column = (int) (cells[i] >> 32);
+            int row = (int) cells[i];
+            int count = 0;
+            for (int dx = -1; dx <= 1; dx++) {
+                for (int dy = -1; dy <= 1; dy++) {
+                    for (int j = heads.get(cellKey(column + dx, row + dy)); j != LongIntHashMap.MISSING; j = next[j]) {
+                        if (j <= i || find(parent, i) == find(parent, j)) {
+                            continue;
+                        }
+                        if (planar) {
+                            if (LocalProjectionDistanceService.isWithin(projected[i], projected[j], eps)) {
+                                union(parent, i, j);
+                            }
+                        } else {
+                            candidateLatitudes[count] = latitudes[j];
+                            candidateLongitudes[count] = longitudes[j];
+                            candidates[count++] = j;
+                        }
+                    }
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+            distanceService.distancesFrom(new Coordinate(latitudes[i], longitudes[i]), candidateLatitudes,
+                    candidateLongitudes, count, distances);
+            for (int k = 0; k < count; k++) {
+                if (distances[k] <= eps) {
+                    union(parent, i, candidates[k]);
+                }
+            }
+        }
+
+        LongIntHashMap componentOfRoot = new LongIntHashMap(size);
+        for (int i = 0; i < size; i++) {
+            int root = find(parent, i);
+            int component = componentOfRoot.get(root);
+            if (component == LongIntHashMap.MISSING) {
+                component = componentOfRoot.size();
+                componentOfRoot.put(root, component);
+            }
+            components[i] = component;
+        }
+        return components;
+    }
+
+    private static long cellKey(int column, int row) {
+        return ((long) column << 32) | (row & 0xFFFFFFFFL);
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA < rootB) {
+            parent[rootB] = rootA;
+        } else if (rootB < rootA) {
+            parent[rootA] = rootB;
+        }
+    }
+}
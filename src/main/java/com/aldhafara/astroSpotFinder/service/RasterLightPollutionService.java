@@ -0,0 +1,63 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.LightPollutionBatchResponse;
+import com.aldhafara.astroSpotFinder.model.LightPollutionInfo;
+import com.aldhafara.astroSpotFinder.raster.LightPollutionRaster;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+@Service
+@ConditionalOnProperty(prefix = "lightpollutionservice", name = "provider", havingValue = "raster", matchIfMissing = false)
+public class RasterLightPollutionService implements LightPollutionService {
+
+    private static final Logger log = LoggerFactory.getLogger(RasterLightPollutionService.class);
+
+    private final LightPollutionRaster raster;
+
+    public RasterLightPollutionService(@Value("${lightpollutionservice.raster.path}") String rasterPath) {
+        try {
+            this.raster = LightPollutionRaster.open(Path.of(rasterPath));
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot open light pollution raster " + rasterPath, e);
+        }
+        log.debug("Using RasterLightPollutionService as LightPollutionService implementation, raster {} ({}x{} px)",
+                rasterPath, raster.width(), raster.height());
+    }
+
+    RasterLightPollutionService(LightPollutionRaster raster) {
+        this.raster = raster;
+    }
+
+    @Override
+    public Optional<LightPollutionInfo> getLightPollution(Coordinate coordinate) {
+        double brightness = raster.brightness(coordinate.latitude(), coordinate.longitude());
+        if (!(brightness >= 0.0 && brightness <= 255.0)) {
+            log.debug("Light pollution raster has no valid data for coordinate {}: {}", coordinate, brightness);
+            return Optional.empty();
+        }
+        return Optional.of(new LightPollutionInfo(coordinate.latitude(), coordinate.longitude(), brightness));
+    }
+
+    @Override
+    public LightPollutionBatchResponse getLightPollution(Collection<Coordinate> coordinates) {
+        Map<Coordinate, LightPollutionInfo> results = new HashMap<>();
+        Set<Coordinate> noData = new HashSet<>();
+        for (Coordinate coordinate : coordinates) {
+            getLightPollution(coordinate).ifPresentOrElse(info -> results.put(coordinate, info), () -> noData.add(coordinate));
+        }
+        return new LightPollutionBatchResponse(results, Set.of(), noData);
+    }
+}
@@ -1,22 +1,56 @@
 package com.aldhafara.astroSpotFinder.service;
 
 import com.aldhafara.astroSpotFinder.model.Coordinate;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 @Service
 public class StraightLineDistanceService implements DistanceService {
 
-    private static final double EARTH_RADIUS_KM = 6371.0;
+    static final double EARTH_RADIUS_KM = 6371.0;
+
+    /**
+     * The Vector API is an incubator module: batches use it only when the build ran with the {@code vector} profile
+     * and the JVM was started with {@code --add-modules jdk.incubator.vector}. {@code null} otherwise.
+     */
+    private static final DistanceBatch VECTORIZED = loadVectorized();
 
     @Override
-    @Cacheable("distances")
     public double findDistance(Coordinate pointA, Coordinate pointB) {
-        double latA = Math.toRadians(pointA.latitude());
-        double lonA = Math.toRadians(pointA.longitude());
-        double latB = Math.toRadians(pointB.latitude());
-        double lonB = Math.toRadians(pointB.longitude());
+        return haversine(Math.toRadians(pointA.latitude()), Math.toRadians(pointA.longitude()),
+                Math.toRadians(pointB.latitude()), Math.toRadians(pointB.longitude()));
+    }
+
+    @Override
+    public void distancesFrom(Coordinate origin, double[] latitudes, double[] longitudes, int count, double[] out) {
+        if (VECTORIZED != null) {
+            VECTORIZED.distancesFrom(origin, latitudes, longitudes, count, out);
+        } else {
+            scalarDistancesFrom(origin, latitudes, longitudes, 0, count, out);
+        }
+    }
 
+    static void scalarDistancesFrom(Coordinate origin, double[] latitudes, double[] longitudes, int from, int to, double[] out) {
+        double latA = Math.toRadians(origin.latitude());
+        double lonA = Math.toRadians(origin.longitude());
+        for (int i = from; i < to; i++) {
+            out[i] = haversine(latA, lonA, Math.toRadians(latitudes[i]), Math.toRadians(longitudes[i]));
+        }
+    }
+
+    private static DistanceBatch loadVectorized() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            return (DistanceBatch) Class.forName(StraightLineDistanceService.class.getPackageName() + ".VectorizedHaversine")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static double haversine(double latA, double lonA, double latB, double lonB) {
         double dLat = latB - latA;
         double dLon = lonB - lonA;
 
@@ -26,4 +60,11 @@ public class StraightLineDistanceService implements DistanceService {
 
         return EARTH_RADIUS_KM * angleBetweenPoints;
     }
+
+    /**
+     * Distances from one point to many, see {@link DistanceService#distancesFrom}.
+     */
+    interface DistanceBatch {
+        void distancesFrom(Coordinate origin, double[] latitudes, double[] longitudes, int count, double[] out);
+    }
 }
@@ -0,0 +1,127 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import com.aldhafara.astroSpotFinder.model.LocationConditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Picks the {@code k} darkest locations without sorting all of them. Brightness values are copied to a primitive
+ * array once and a bounded max-heap of {@code k} indices keeps the best ones seen so far, so the cost is
+ * {@code O(n log k)} and only the selected locations are sorted. Among equal brightness the location met first wins,
+ * which is the order a stable sort of the whole input would give.
+ */
+final class TopLocationsSelection {
+
+    private TopLocationsSelection() {
+    }
+
+    /**
+     * Returns the {@code k} darkest locations in ascending brightness; with {@code withTies} also every location as
+     * dark as the {@code k}-th one.
+     */
+    static List<LocationConditions> select(List<LocationConditions> locations, int k, boolean withTies) {
+        double[] brightness = new double[locations.size()];
+        for (int i = 0; i < brightness.length; i++) {
+            brightness[i] = locations.get(i).brightness();
+        }
+        int[] selected = select(brightness, brightness.length, k, withTies);
+        List<LocationConditions> result = new ArrayList<>(selected.length);
+        for (int index : selected) {
+            result.add(locations.get(index));
+        }
+        return result;
+    }
+
+    /**
+     * Same selection on the first {@code size} values of a brightness column; returns the selected indices in
+     * ascending brightness.
+     */
+    static int[] select(double[] brightness, int size, int k, boolean withTies) {
+        if (k <= 0 || size == 0) {
+            return new int[0];
+        }
+        k = Math.min(k, size);
+
+        int[] heap = new int[k];
+        int heapSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (heapSize < k) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++, brightness);
+            } else if (Double.compare(brightness[i], brightness[heap[0]]) < 0) {
+                heap[0] = i;
+                siftDown(heap, k, brightness);
+            }
+        }
+
+        int[] selected = heap;
+        if (withTies) {
+            double threshold = brightness[heap[0]];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (Double.compare(brightness[i], threshold) <= 0) {
+                    count++;
+                }
+            }
+            selected = new int[count];
+            int next = 0;
+            for (int i = 0; i < size; i++) {
+                if (Double.compare(brightness[i], threshold) <= 0) {
+                    selected[next++] = i;
+                }
+            }
+        }
+
+        Integer[] order = new Integer[selected.length];
+        for (int i = 0; i < selected.length; i++) {
+            order[i] = selected[i];
+        }
+        Arrays.sort(order, Comparator.<Integer>comparingDouble(index -> brightness[index]).thenComparingInt(index -> index));
+        for (int i = 0; i < order.length; i++) {
+            selected[i] = order[i];
+        }
+        return selected;
+    }
+
+    /**
+     * Heap order: the root is the worst kept location, the brightest one and among equals the one met last.
+     */
+    private static boolean worse(int a, int b, double[] brightness) {
+        int compare = Double.compare(brightness[a], brightness[b]);
+        return compare > 0 || (compare == 0 && a > b);
+    }
+
+    private static void siftUp(int[] heap, int position, double[] brightness) {
+        int item = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (!worse(item, heap[parent], brightness)) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = item;
+    }
+
+    private static void siftDown(int[] heap, int size, double[] brightness) {
+        int item = heap[0];
+        int position = 0;
+        int half = size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < size && worse(heap[child + 1], heap[child], brightness)) {
+                child++;
+            }
+            if (!worse(heap[child], item, brightness)) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = item;
+    }
+}
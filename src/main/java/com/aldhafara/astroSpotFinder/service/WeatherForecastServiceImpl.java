@@ -2,8 +2,12 @@ package com.aldhafara.astroSpotFinder.service;
 
 import com.aldhafara.astroSpotFinder.model.Coordinate;
 import com.aldhafara.astroSpotFinder.model.WeatherForecastResponse;
+import com.aldhafara.astroSpotFinder.upstream.AdaptiveConcurrencyLimiter;
+import com.aldhafara.astroSpotFinder.upstream.HedgedRequests;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.cache.annotation.Cacheable;
@@ -16,6 +20,7 @@ import org.springframework.web.util.UriComponentsBuilder;
 
 import java.net.URI;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 @Service
 @ConditionalOnProperty(prefix = "weatherforecastservice", name = "provider", havingValue = "real", matchIfMissing = true)
@@ -25,8 +30,14 @@ public class WeatherForecastServiceImpl implements WeatherForecastService {
 
     private final RestTemplate restTemplate;
     private final String serviceUrl;
+    @Autowired(required = false)
+    @Qualifier("weatherForecastLimiter")
+    private AdaptiveConcurrencyLimiter limiter;
+    @Autowired(required = false)
+    @Qualifier("weatherForecastHedging")
+    private HedgedRequests hedging;
 
-    public WeatherForecastServiceImpl(RestTemplate restTemplate,
+    public WeatherForecastServiceImpl(@Qualifier("weatherForecastRestTemplate") RestTemplate restTemplate,
                                       @Value("${weatherforecastservice.url}") String serviceUrl) {
         log.debug("Using WeatherForecastServiceImpl as WeatherForecastService implementation");
         this.restTemplate = restTemplate;
@@ -34,7 +45,7 @@ public class WeatherForecastServiceImpl implements WeatherForecastService {
     }
 
     @Override
-    @Cacheable("weatherforecast")
+    @Cacheable(value = "weatherforecast", sync = true)
     public CompletableFuture<WeatherForecastResponse> getNightForecast(Coordinate coordinate, String timezone) {
         StopWatch stopWatch = new StopWatch();
         stopWatch.start();
@@ -44,8 +55,7 @@ public class WeatherForecastServiceImpl implements WeatherForecastService {
 
         URI uri = buildWeatherForecastUrl(coordinate, timezone);
         try {
-            WeatherForecastResponse response = restTemplate.getForObject(
-                    uri, WeatherForecastResponse.class);
+            WeatherForecastResponse response = exchange(() -> restTemplate.getForObject(uri, WeatherForecastResponse.class));
 
             stopWatch.stop();
 
@@ -65,6 +75,11 @@ public class WeatherForecastServiceImpl implements WeatherForecastService {
         }
     }
 
+    private <T> T exchange(Supplier<T> request) {
+        Supplier<T> limited = limiter != null ? () -> limiter.call(request) : request;
+        return hedging != null ? hedging.call(limited) : limited.get();
+    }
+
     private URI buildWeatherForecastUrl(Coordinate coordinate, String timezone) {
         return UriComponentsBuilder.fromUriString(serviceUrl + "/forecast")
                 .queryParam("latitude", coordinate.latitude())
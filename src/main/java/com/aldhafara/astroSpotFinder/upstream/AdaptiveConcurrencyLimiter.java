@@ -0,0 +1,214 @@
+package com.aldhafara.astroSpotFinder.upstream;
+
+import com.aldhafara.astroSpotFinder.configuration.AdaptiveLimiterConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide concurrency limit for one upstream service, adjusted with AIMD: every successful call while the limit
+ * is in use adds {@code 1 / limit} (about one slot per round trip); a 429, a timeout or connection failure, or
+ * several consecutive calls slower than {@code latencyTolerance} times the baseline latency multiply it by
+ * {@code backoffRatio}. The baseline is a moving average of recent latencies, judged only after a warm-up, so a single
+ * unusually fast answer does not make every normal call look like a spike. Callers over the limit wait in FIFO order
+ * instead of failing. Calls of different request types, e.g. single-point and batch requests, share the limit but
+ * each type has its own baseline latency, so a slow type is not mistaken for a latency spike of a fast one.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+    private static final double BASELINE_WEIGHT = 0.1;
+    private static final int WARM_UP_SAMPLES = 10;
+    private static final int SLOW_CALLS_BEFORE_CUT = 5;
+    private static final String DEFAULT_REQUEST_TYPE = "default";
+
+    private final String name;
+    private final AdaptiveLimiterConfig.Settings settings;
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition available = lock.newCondition();
+    private final Counter throttled;
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private final Map<String, Baseline> baselines = new HashMap<>();
+    private long lastDecreaseNanos;
+
+    public AdaptiveConcurrencyLimiter(String name, AdaptiveLimiterConfig.Settings settings, MeterRegistry meterRegistry) {
+        if (settings.minLimit() < 1 || settings.maxLimit() < settings.minLimit()) {
+            throw new IllegalArgumentException("Invalid limits for " + name + ": " + settings);
+        }
+        this.name = name;
+        this.settings = settings;
+        this.limit = Math.clamp(settings.initialLimit(), settings.minLimit(), settings.maxLimit());
+        this.lastDecreaseNanos = System.nanoTime();
+
+        Gauge.builder("upstream.limiter.limit", this, AdaptiveConcurrencyLimiter::limit)
+                .description("Current adaptive concurrency limit")
+                .tag("upstream", name)
+                .register(meterRegistry);
+        Gauge.builder("upstream.limiter.inflight", this, AdaptiveConcurrencyLimiter::inFlight)
+                .description("Upstream calls currently holding a permit")
+                .tag("upstream", name)
+                .register(meterRegistry);
+        Gauge.builder("upstream.limiter.queued", this, AdaptiveConcurrencyLimiter::queued)
+                .description("Callers waiting for a permit")
+                .tag("upstream", name)
+                .register(meterRegistry);
+        this.throttled = Counter.builder("upstream.limiter.throttled")
+                .description("Upstream calls rejected with 429 Too Many Requests")
+                .tag("upstream", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the call once a permit is available and adjusts the limit from its outcome. Exceptions thrown by the call
+     * are rethrown; waiting is aborted with a {@link ResourceAccessException} if the thread is interrupted.
+     */
+    public <T> T call(Supplier<T> request) {
+        return call(DEFAULT_REQUEST_TYPE, request);
+    }
+
+    /**
+     * Same as {@link #call(Supplier)}, judging the latency of the call against the baseline of {@code requestType}.
+     */
+    public <T> T call(String requestType, Supplier<T> request) {
+        acquire();
+        long start = System.nanoTime();
+        try {
+            T result = request.get();
+            onSuccess(requestType, System.nanoTime() - start);
+            return result;
+        } catch (HttpClientErrorException.TooManyRequests e) {
+            throttled.increment();
+            onOverload(requestType, "429 Too Many Requests");
+            throw e;
+        } catch (ResourceAccessException e) {
+            // Timeouts and connection failures; a cancelled call says nothing about the upstream
+            if (!Thread.currentThread().isInterrupted()) {
+                onOverload(requestType, "%s I/O failure: %s".formatted(requestType, e.getMessage()));
+            }
+            throw e;
+        } finally {
+            release();
+        }
+    }
+
+    public int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void acquire() {
+        lock.lock();
+        try {
+            queued++;
+            try {
+                while (inFlight >= (int) limit) {
+                    available.await();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResourceAccessException("Interrupted while waiting for " + name + " permit");
+            } finally {
+                queued--;
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onSuccess(String requestType, long latencyNanos) {
+        lock.lock();
+        try {
+            Baseline baseline = baselines.computeIfAbsent(requestType, type -> new Baseline());
+            boolean slow = baseline.samples >= WARM_UP_SAMPLES && latencyNanos > baseline.nanos * settings.latencyTolerance();
+            baseline.add(latencyNanos);
+            if (slow) {
+                if (++baseline.slowCalls >= SLOW_CALLS_BEFORE_CUT) {
+                    baseline.slowCalls = 0;
+                    onOverload(requestType, "%s latency %dms".formatted(requestType, latencyNanos / 1_000_000));
+                }
+                return;
+            }
+            baseline.slowCalls = 0;
+            if (inFlight * 2 >= limit && limit < settings.maxLimit()) {
+                limit = Math.min(settings.maxLimit(), limit + 1.0 / limit);
+                available.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onOverload(String requestType, String reason) {
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+            Baseline baseline = baselines.get(requestType);
+            // Calls started before the last decrease report the old overload again; cut at most once per round trip
+            if (baseline != null && baseline.samples > 0 && now - lastDecreaseNanos < baseline.nanos) {
+                return;
+            }
+            lastDecreaseNanos = now;
+            double previous = limit;
+            limit = Math.max(settings.minLimit(), limit * settings.backoffRatio());
+            log.debug("{} concurrency limit {} -> {} ({})", name, (int) previous, (int) limit, reason);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Baseline {
+        private double nanos;
+        private long samples;
+        private int slowCalls;
+
+        private void add(long latencyNanos) {
+            nanos = samples == 0 ? latencyNanos : nanos + (latencyNanos - nanos) * BASELINE_WEIGHT;
+            samples++;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.aldhafara.astroSpotFinder.upstream;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Runs blocking upstream I/O on virtual threads, at most {@code astrospot.io.max-concurrency} at a time across the
+ * whole process. Keeps HTTP fan-out off the common ForkJoinPool, which is left to CPU-bound parallel streams.
+ */
+@Component
+public class BoundedIoExecutor implements AutoCloseable {
+
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("upstream-io-", 0).factory());
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    public BoundedIoExecutor(@Value("${astrospot.io.max-concurrency:256}") int maxConcurrency,
+                             MeterRegistry meterRegistry) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.permits = new Semaphore(this.maxConcurrency, true);
+        Gauge.builder("upstream.io.active", this, BoundedIoExecutor::active)
+                .description("Upstream I/O tasks currently running on virtual threads")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Applies the task to every item concurrently and waits for all of them. The caller blocks while all permits are
+     * taken. If tasks fail, the first failure is rethrown once every task has finished. Interrupting the caller
+     * interrupts the running tasks too.
+     */
+    public <T> void forEach(Collection<T> items, Consumer<T> task) {
+        if (items.size() <= 1) {
+            items.forEach(task);
+            return;
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>(items.size());
+        Set<Thread> workers = ConcurrentHashMap.newKeySet();
+        try {
+            for (T item : items) {
+                permits.acquire();
+                try {
+                    futures.add(CompletableFuture.runAsync(() -> {
+                        workers.add(Thread.currentThread());
+                        try {
+                            task.accept(item);
+                        } finally {
+                            workers.remove(Thread.currentThread());
+                            permits.release();
+                        }
+                    }, executor));
+                } catch (RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.forEach(Thread::interrupt);
+            throw new ResourceAccessException("Interrupted while scheduling upstream calls");
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.forEach(Thread::interrupt);
+            throw new ResourceAccessException("Interrupted while waiting for upstream calls");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public int active() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
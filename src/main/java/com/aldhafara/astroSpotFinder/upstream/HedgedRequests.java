@@ -0,0 +1,242 @@
+package com.aldhafara.astroSpotFinder.upstream;
+
+import com.aldhafara.astroSpotFinder.configuration.HedgingConfig;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Hedges idempotent upstream calls: when a call has not answered within the configured percentile of recent
+ * latencies, an identical second call is started and whichever succeeds first is used. Hedges are paid for with a
+ * budget that grows by {@code maxExtraLoad} per call, so they never add more than that share of extra requests.
+ * Latencies are kept per request type, so the delay of one type is not skewed by another. The attempt that loses the
+ * race is interrupted, which releases its limiter permit and connection.
+ */
+public class HedgedRequests implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(HedgedRequests.class);
+    private static final int RECALCULATE_EVERY = 100;
+    private static final double MAX_BUDGET = 10.0;
+    private static final String DEFAULT_REQUEST_TYPE = "default";
+
+    private final String name;
+    private final HedgingConfig.Settings settings;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final MeterRegistry meterRegistry;
+    private final Map<String, LatencyWindow> windows = new HashMap<>();
+    private final Counter fired;
+    private final Counter won;
+    private double budget;
+
+    public HedgedRequests(String name, HedgingConfig.Settings settings, MeterRegistry meterRegistry) {
+        if (settings.percentile() <= 0 || settings.percentile() >= 1 || settings.window() < RECALCULATE_EVERY) {
+            throw new IllegalArgumentException("Invalid hedging settings for " + name + ": " + settings);
+        }
+        this.name = name;
+        this.settings = settings;
+        this.meterRegistry = meterRegistry;
+
+        this.fired = Counter.builder("upstream.hedge.fired")
+                .description("Hedged requests sent because the first call exceeded the hedge delay")
+                .tag("upstream", name)
+                .register(meterRegistry);
+        this.won = Counter.builder("upstream.hedge.won")
+                .description("Hedged requests that answered before the original call")
+                .tag("upstream", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the call, hedging it if it is slower than the current delay. Exceptions are rethrown only when every
+     * attempt failed; the first failure is reported.
+     */
+    public <T> T call(Supplier<T> request) {
+        return call(DEFAULT_REQUEST_TYPE, request);
+    }
+
+    /**
+     * Same as {@link #call(Supplier)}, with the hedge delay taken from the recent latencies of {@code requestType}.
+     */
+    public <T> T call(String requestType, Supplier<T> request) {
+        long hedgeAfter = reserve(requestType);
+        Race<T> race = new Race<>();
+        long start = System.nanoTime();
+        Future<?> primary = attempt(requestType, request, race, false);
+        Future<?> hedge = null;
+        try {
+            if (hedgeAfter == Long.MAX_VALUE) {
+                return race.await();
+            }
+            try {
+                return race.result.get(hedgeAfter, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                if (!race.result.isDone() && spend()) {
+                    fired.increment();
+                    log.debug("{} {} call slower than {}ms, sending hedged request", name, requestType, hedgeAfter / 1_000_000);
+                    race.attempts.incrementAndGet();
+                    hedge = attempt(requestType, request, race, true);
+                }
+                return race.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResourceAccessException("Interrupted while waiting for " + name);
+            } catch (ExecutionException e) {
+                return race.await();
+            }
+        } finally {
+            if (primary.cancel(true) && race.primaryTimed.compareAndSet(false, true)) {
+                // The primary lost the race; its latency is at least this long
+                record(requestType, System.nanoTime() - start);
+            }
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+            if (race.hedgeWon) {
+                won.increment();
+            }
+        }
+    }
+
+    double delayMillis() {
+        return delayMillis(DEFAULT_REQUEST_TYPE);
+    }
+
+    synchronized double delayMillis(String requestType) {
+        LatencyWindow window = windows.get(requestType);
+        return window == null || window.delayNanos == Long.MAX_VALUE ? Double.NaN : window.delayNanos / 1_000_000.0;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private <T> Future<?> attempt(String requestType, Supplier<T> request, Race<T> race, boolean hedge) {
+        return executor.submit(() -> {
+            long start = System.nanoTime();
+            T result;
+            try {
+                result = request.get();
+            } catch (RuntimeException | Error failure) {
+                race.failed(failure);
+                return;
+            }
+            if (!hedge && race.primaryTimed.compareAndSet(false, true)) {
+                record(requestType, System.nanoTime() - start);
+            }
+            race.settle(result, hedge);
+        });
+    }
+
+    private synchronized long reserve(String requestType) {
+        budget = Math.min(MAX_BUDGET, budget + settings.maxExtraLoad());
+        return window(requestType).delayNanos;
+    }
+
+    private synchronized boolean spend() {
+        if (budget < 1.0) {
+            return false;
+        }
+        budget -= 1.0;
+        return true;
+    }
+
+    private synchronized void record(String requestType, long latencyNanos) {
+        LatencyWindow window = window(requestType);
+        window.latencies[window.next] = latencyNanos;
+        window.next = (window.next + 1) % window.latencies.length;
+        window.filled = Math.min(window.filled + 1, window.latencies.length);
+        if (++window.sinceRecalculation == RECALCULATE_EVERY) {
+            window.sinceRecalculation = 0;
+            long[] sorted = Arrays.copyOf(window.latencies, window.filled);
+            Arrays.sort(sorted);
+            long percentile = sorted[(int) Math.ceil(settings.percentile() * sorted.length) - 1];
+            window.delayNanos = Math.max(settings.minDelay().toNanos(), percentile);
+        }
+    }
+
+    private LatencyWindow window(String requestType) {
+        return windows.computeIfAbsent(requestType, type -> {
+            Gauge.builder("upstream.hedge.delay", this, hedging -> hedging.delayMillis(type))
+                    .description("Current hedge delay in milliseconds, NaN until enough latency samples are collected")
+                    .tag("upstream", name)
+                    .tag("type", type)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+            return new LatencyWindow(settings.window());
+        });
+    }
+
+    private static final class LatencyWindow {
+        private final long[] latencies;
+        private int next;
+        private int filled;
+        private int sinceRecalculation;
+        private long delayNanos = Long.MAX_VALUE;
+
+        private LatencyWindow(int size) {
+            this.latencies = new long[size];
+        }
+    }
+
+    private static final class Race<T> {
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final AtomicInteger attempts = new AtomicInteger(1);
+        private final AtomicBoolean primaryTimed = new AtomicBoolean();
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private volatile boolean hedgeWon;
+        private volatile Throwable firstFailure;
+
+        private void settle(T value, boolean hedge) {
+            // The winner is noted before completing, so the caller sees it as soon as the answer arrives
+            if (settled.compareAndSet(false, true)) {
+                hedgeWon = hedge;
+                result.complete(value);
+            }
+        }
+
+        private void failed(Throwable failure) {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause()
+                    : failure;
+            if (firstFailure == null) {
+                firstFailure = cause;
+            }
+            if (attempts.decrementAndGet() == 0) {
+                result.completeExceptionally(firstFailure);
+            }
+        }
+
+        private T await() {
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new ResourceAccessException("Interrupted while waiting for hedged call");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new CompletionException(e.getCause());
+            }
+        }
+    }
+}
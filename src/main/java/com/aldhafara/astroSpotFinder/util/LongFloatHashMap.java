@@ -0,0 +1,108 @@
+package com.aldhafara.astroSpotFinder.util;
+
+/**
+ * Open-addressing map from primitive {@code long} keys to {@code float} values. {@link Float#NaN} marks a missing
+ * value, so it cannot be stored. Not thread-safe.
+ */
+public final class LongFloatHashMap {
+
+    private static final long FREE = 0L;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private float[] values;
+    private int mask;
+    private int size;
+    private float freeValue = Float.NaN;
+
+    public LongFloatHashMap() {
+        this(16);
+    }
+
+    public LongFloatHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new float[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Returns the value stored for the key, or {@link Float#NaN} when there is none.
+     */
+    public float get(long key) {
+        if (key == FREE) {
+            return freeValue;
+        }
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return Float.NaN;
+    }
+
+    /**
+     * Stores the value and returns the previous one, or {@link Float#NaN} when the key was absent.
+     */
+    public float put(long key, float value) {
+        if (Float.isNaN(value)) {
+            throw new IllegalArgumentException("NaN cannot be stored in LongFloatHashMap");
+        }
+        if (key == FREE) {
+            float previous = freeValue;
+            if (Float.isNaN(previous)) {
+                size++;
+            }
+            freeValue = value;
+            return previous;
+        }
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                float previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > (mask + 1) * LOAD_FACTOR) {
+            rehash();
+        }
+        return Float.NaN;
+    }
+
+    public boolean containsKey(long key) {
+        return !Float.isNaN(get(key));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        float[] oldValues = values;
+        keys = new long[oldKeys.length << 1];
+        values = new float[oldKeys.length << 1];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.aldhafara.astroSpotFinder.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash set of primitive {@code long}s, used for cell keys on hot paths where boxing every element
+ * into a {@code HashSet} would dominate the cost. Not thread-safe.
+ */
+public final class LongHashSet {
+
+    private static final long FREE = 0L;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int mask;
+    private int size;
+    private boolean containsFree;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        this.keys = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Adds the key and returns {@code true} when it was not present yet.
+     */
+    public boolean add(long key) {
+        if (key == FREE) {
+            if (containsFree) {
+                return false;
+            }
+            containsFree = true;
+            size++;
+            return true;
+        }
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        if (++size > (mask + 1) * LOAD_FACTOR) {
+            rehash();
+        }
+        return true;
+    }
+
+    public boolean contains(long key) {
+        if (key == FREE) {
+            return containsFree;
+        }
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        containsFree = false;
+        size = 0;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash() {
+        long[] old = keys;
+        keys = new long[old.length << 1];
+        mask = keys.length - 1;
+        for (long key : old) {
+            if (key != FREE) {
+                int slot = slot(key);
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+            }
+        }
+    }
+}
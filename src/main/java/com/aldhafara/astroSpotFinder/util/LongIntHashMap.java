@@ -0,0 +1,106 @@
+package com.aldhafara.astroSpotFinder.util;
+
+/**
+ * Open-addressing map from primitive {@code long} keys to non-negative {@code int} values. {@link #MISSING} marks an
+ * absent key, so negative values cannot be stored. Not thread-safe.
+ */
+public final class LongIntHashMap {
+
+    public static final int MISSING = -1;
+
+    private static final long FREE = 0L;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int freeValue = MISSING;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Returns the value stored for the key, or {@link #MISSING} when there is none.
+     */
+    public int get(long key) {
+        if (key == FREE) {
+            return freeValue;
+        }
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    /**
+     * Stores the value and returns the previous one, or {@link #MISSING} when the key was absent.
+     */
+    public int put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative values cannot be stored in LongIntHashMap");
+        }
+        if (key == FREE) {
+            int previous = freeValue;
+            if (previous == MISSING) {
+                size++;
+            }
+            freeValue = value;
+            return previous;
+        }
+        int slot = slot(key);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > (mask + 1) * LOAD_FACTOR) {
+            rehash();
+        }
+        return MISSING;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int slot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length << 1];
+        values = new int[oldKeys.length << 1];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = slot(oldKeys[i]);
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.aldhafara.astroSpotFinder.configuration;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheConfigTest {
+
+    private final CacheConfig cacheConfig = new CacheConfig();
+
+    @Test
+    void shouldBoundEveryConfiguredCache() {
+        CacheManager cacheManager = cacheConfig.cacheManager(new CacheSpecsConfig(null, Map.of()));
+
+        for (String name : CacheConfig.DEFAULT_SPECS.keySet()) {
+            Cache<Object, Object> nativeCache = nativeCache(cacheManager, name);
+            assertTrue(nativeCache.policy().eviction().isPresent(), name + " should be size bounded");
+            assertTrue(nativeCache.policy().isRecordingStats(), name + " should record stats");
+        }
+        assertEquals(Duration.ofDays(30), nativeCache(cacheManager, "lightPollution").policy().expireAfterWrite().orElseThrow().getExpiresAfter());
+        assertEquals(Duration.ofHours(3), nativeCache(cacheManager, "weatherforecast").policy().expireAfterWrite().orElseThrow().getExpiresAfter());
+    }
+
+    @Test
+    void shouldApplyOverriddenSpecAndDefaultSpecForUnknownCaches() {
+        CacheManager cacheManager = cacheConfig.cacheManager(
+                new CacheSpecsConfig("maximumSize=5,recordStats", Map.of("lightPollution", "maximumSize=1,recordStats")));
+
+        assertEquals(1, nativeCache(cacheManager, "lightPollution").policy().eviction().orElseThrow().getMaximum());
+        assertEquals(5, nativeCache(cacheManager, "other").policy().eviction().orElseThrow().getMaximum());
+    }
+
+    @Test
+    void shouldExposeHitRatio() {
+        CacheManager cacheManager = cacheConfig.cacheManager(new CacheSpecsConfig(null, null));
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cacheConfig.cacheHitRatioMetrics(cacheManager).bindTo(registry);
+
+        org.springframework.cache.Cache cache = cacheManager.getCache("lightPollution");
+        cache.put("key", "value");
+        cache.get("key");
+        cache.get("missing");
+
+        assertEquals(0.5, registry.get("cache.hit.ratio").tag("cache", "lightPollution").gauge().value());
+    }
+
+    private Cache<Object, Object> nativeCache(CacheManager cacheManager, String name) {
+        return assertInstanceOf(CaffeineCache.class, cacheManager.getCache(name)).getNativeCache();
+    }
+}
@@ -0,0 +1,105 @@
+package com.aldhafara.astroSpotFinder.configuration;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RestTemplateConfigTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/gzip", exchange -> {
+            boolean gzip = String.valueOf(exchange.getRequestHeaders().getFirst("Accept-Encoding")).contains("gzip");
+            byte[] body = gzip ? gzip("{\"value\":42}") : "{\"value\":42}".getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if (gzip) {
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/slow", exchange -> {
+            try {
+                Thread.sleep(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void shouldDecodeGzipAndPublishPoolMetrics_withPooledClient() {
+        RestTemplate restTemplate = RestTemplateConfig.restTemplate("test", settings(false), meterRegistry);
+
+        Value value = restTemplate.getForObject(baseUrl + "/gzip", Value.class);
+
+        assertEquals(42, value.value());
+        assertNotNull(meterRegistry.find("httpcomponents.httpclient.pool.total.max").tag("httpclient", "test").gauge());
+        assertEquals(1, meterRegistry.get("http.client.pool.wait").tag("client", "test").timer().count());
+    }
+
+    @Test
+    void shouldDecodeGzip_withHttp2Client() {
+        RestTemplate restTemplate = RestTemplateConfig.restTemplate("test", settings(true), meterRegistry);
+
+        Value value = restTemplate.getForObject(baseUrl + "/gzip", Value.class);
+
+        assertEquals(42, value.value());
+    }
+
+    @Test
+    void shouldTimeOut_whenUpstreamHangs() {
+        RestTemplate restTemplate = RestTemplateConfig.restTemplate("test", settings(false), meterRegistry);
+
+        assertThrows(ResourceAccessException.class, () -> restTemplate.getForObject(baseUrl + "/slow", String.class));
+    }
+
+    private static HttpClientConfig.Settings settings(boolean http2) {
+        return new HttpClientConfig.Settings(http2, 4, 8, Duration.ofSeconds(30), Duration.ofSeconds(1),
+                Duration.ofMillis(200), Duration.ofMillis(200), Duration.ofSeconds(1), true);
+    }
+
+    private static byte[] gzip(String value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(value.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    record Value(int value) {
+    }
+}
@@ -0,0 +1,54 @@
+package com.aldhafara.astroSpotFinder.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CandidateBufferTest {
+
+    @Test
+    void shouldStoreColumnsDerivedFromCellKey() {
+        CandidateBuffer buffer = new CandidateBuffer(1);
+        long first = GridCell.key(50.123456, 20.654321);
+        long second = GridCell.key(-33.5, 151.25);
+
+        buffer.add(first, 0.4);
+        buffer.add(second, 0.1);
+
+        assertEquals(2, buffer.size());
+        assertEquals(second, buffer.key(1));
+        assertEquals(50.123456, buffer.latitudes()[0]);
+        assertEquals(151.25, buffer.longitudes()[1]);
+        assertEquals(0.1, buffer.brightness()[1]);
+        assertEquals(new LocationConditions(new Coordinate(50.123456, 20.654321), 0.4, null, null), buffer.location(0));
+    }
+
+    @Test
+    void shouldSelectRowsInGivenOrder() {
+        CandidateBuffer buffer = new CandidateBuffer();
+        for (int i = 0; i < 5; i++) {
+            buffer.add(GridCell.key(50 + i, 20), i / 10.0);
+        }
+
+        CandidateBuffer selected = buffer.select(new int[]{3, 0});
+
+        assertEquals(2, selected.size());
+        assertEquals(List.of(
+                new LocationConditions(new Coordinate(53, 20), 0.3, null, null),
+                new LocationConditions(new Coordinate(50, 20), 0.0, null, null)
+        ), List.copyOf(selected.toLocations()));
+    }
+
+    @Test
+    void shouldBeEmptyWithoutRows() {
+        CandidateBuffer buffer = new CandidateBuffer(0);
+
+        assertTrue(buffer.isEmpty());
+        assertEquals(Set.of(), buffer.toLocations());
+        assertTrue(buffer.select(new int[0]).isEmpty());
+    }
+}
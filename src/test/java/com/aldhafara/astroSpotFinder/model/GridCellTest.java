@@ -0,0 +1,43 @@
+package com.aldhafara.astroSpotFinder.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class GridCellTest {
+
+    @Test
+    void shouldRoundTripCoordinatesThroughKey() {
+        long key = GridCell.key(-33.856784, 151.215297);
+
+        assertEquals(-33856784, GridCell.latitudeIndex(key));
+        assertEquals(151215297, GridCell.longitudeIndex(key));
+        assertEquals(new Coordinate(-33.856784, 151.215297), GridCell.coordinate(key));
+    }
+
+    @Test
+    void shouldEncodeExtremeCoordinates() {
+        assertEquals(new Coordinate(-90, -180), GridCell.coordinate(GridCell.key(-90, -180)));
+        assertEquals(new Coordinate(90, 180), GridCell.coordinate(GridCell.key(90, 180)));
+        assertNotEquals(GridCell.key(0, -0.000001), GridCell.key(-0.000001, 0));
+    }
+
+    @Test
+    void shouldMapSameGridPointAtDifferentDepthsToSameKey() {
+        double coarseStep = 0.09;
+        double fineStep = coarseStep / 3;
+        double coarse = 0.0;
+        for (int i = 0; i < 7; i++) {
+            coarse += coarseStep;
+        }
+        double fine = 0.0;
+        for (int i = 0; i < 21; i++) {
+            fine += fineStep;
+        }
+
+        assertNotEquals(coarse, fine);
+        assertEquals(GridCell.key(coarse, 20.0), GridCell.key(fine, 20.0));
+        assertEquals(GridCell.snap(coarse, 20.0), GridCell.snap(fine, 20.0));
+    }
+}
@@ -0,0 +1,58 @@
+package com.aldhafara.astroSpotFinder.model;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GridSizeTest {
+
+    private static final double LATITUDE_STEP = 0.09;
+    private static final double LONGITUDE_STEP = 0.147;
+
+    @Test
+    void shouldKeepConfiguredGridAtReferenceLatitude() {
+        assertEquals(new GridSize(LATITUDE_STEP, LONGITUDE_STEP), GridSize.atLatitude(LATITUDE_STEP, LONGITUDE_STEP, 52, 52.3));
+    }
+
+    @Test
+    void shouldKeepCellAreaInKilometresAtAnyLatitude() {
+        double referenceArea = cellAreaKm2(GridSize.atLatitude(LATITUDE_STEP, LONGITUDE_STEP, 52, 52), 52);
+
+        for (double latitude : new double[]{-45, 0, 38, 60, 69}) {
+            GridSize grid = GridSize.atLatitude(LATITUDE_STEP, LONGITUDE_STEP, 52, latitude);
+
+            assertEquals(referenceArea, cellAreaKm2(grid, latitude), referenceArea * 1e-9, "latitude=" + latitude);
+        }
+    }
+
+    @Test
+    void shouldShareLatticeWithinLatitudeBand() {
+        assertEquals(GridSize.atLatitude(LATITUDE_STEP, LONGITUDE_STEP, 52, 64.6),
+                GridSize.atLatitude(LATITUDE_STEP, LONGITUDE_STEP, 52, 65.4));
+        assertEquals(GridSize.atLatitude(LATITUDE_STEP, LONGITUDE_STEP, 52, 40),
+                GridSize.atLatitude(LATITUDE_STEP, LONGITUDE_STEP, 52, -40));
+    }
+
+    @Test
+    void shouldKeepLongitudeStepFiniteAtPoles() {
+        GridSize grid = GridSize.atLatitude(LATITUDE_STEP, LONGITUDE_STEP, 52, 90);
+
+        assertTrue(Double.isFinite(grid.longitudeDegrees()));
+        assertTrue(grid.longitudeDegrees() < 2);
+    }
+
+    @Test
+    void shouldReturnLongerSideInKilometres() {
+        GridSize grid = new GridSize(0.1, 0.1);
+
+        assertEquals(11.119, grid.maxSideKm(60), 1e-3);
+        assertEquals(11.119, grid.maxSideKm(0), 1e-3);
+        assertEquals(22.239, new GridSize(0.1, 0.4).maxSideKm(60), 1e-3);
+    }
+
+    private static double cellAreaKm2(GridSize grid, double latitude) {
+        double kmPerDegree = Math.PI * 6371.0 / 180;
+        return grid.latitudeDegrees() * kmPerDegree * grid.longitudeDegrees() * kmPerDegree * Math.cos(Math.toRadians(latitude));
+    }
+}
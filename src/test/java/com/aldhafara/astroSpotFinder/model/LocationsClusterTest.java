@@ -0,0 +1,85 @@
+package com.aldhafara.astroSpotFinder.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocationsClusterTest {
+
+    @Test
+    void shouldKeepDistinctLocationsWithEqualBrightness() {
+        LocationConditions a = location(50.0, 20.0, 0.3);
+        LocationConditions b = location(50.1, 20.0, 0.3);
+        LocationConditions c = location(50.2, 20.0, 0.3);
+
+        LocationsCluster cluster = new LocationsCluster(List.of(a, b, c));
+
+        assertEquals(3, cluster.size());
+        assertEquals(Set.of(a, b, c), cluster.getLocations());
+    }
+
+    @Test
+    void shouldReturnLocationsInAscendingBrightnessWithoutRepeats() {
+        LocationConditions dark = location(50.0, 20.0, 0.1);
+        LocationConditions medium = location(50.1, 20.0, 0.5);
+        LocationConditions bright = location(50.2, 20.0, 0.9);
+        LocationsCluster cluster = new LocationsCluster();
+
+        cluster.add(bright);
+        cluster.add(dark);
+        cluster.add(medium);
+        cluster.add(dark);
+
+        assertEquals(List.of(dark, medium, bright), List.copyOf(cluster.getLocations()));
+        assertTrue(cluster.getLocations().contains(medium));
+        assertFalse(cluster.getLocations().contains(location(50.3, 20.0, 0.5)));
+    }
+
+    @Test
+    void shouldAppendWholeClusterAndLeaveItUnchanged() {
+        LocationConditions a = location(50.0, 20.0, 0.2);
+        LocationConditions b = location(50.1, 20.0, 0.4);
+        LocationConditions c = location(50.2, 20.0, 0.2);
+        LocationsCluster target = new LocationsCluster(List.of(a, b));
+        LocationsCluster other = new LocationsCluster(List.of(c, a));
+
+        target.addAll(other);
+
+        assertEquals(List.of(a, c, b), List.copyOf(target.getLocations()));
+        assertEquals(Set.of(a, c), other.getLocations());
+    }
+
+    @Test
+    void shouldNotShowLaterAdditionsInEarlierView() {
+        LocationConditions a = location(50.0, 20.0, 0.5);
+        LocationsCluster cluster = new LocationsCluster(List.of(a));
+        Set<LocationConditions> view = cluster.getLocations();
+
+        cluster.add(location(50.1, 20.0, 0.1));
+
+        assertEquals(Set.of(a), view);
+        assertEquals(2, cluster.getLocations().size());
+        assertThrows(UnsupportedOperationException.class, () -> view.add(a));
+    }
+
+    @Test
+    void shouldReplaceLocations() {
+        LocationConditions a = location(50.0, 20.0, 0.5);
+        LocationConditions b = location(50.1, 20.0, 0.5);
+        LocationsCluster cluster = new LocationsCluster(List.of(location(49.0, 19.0, 0.1)));
+
+        cluster.setLocations(List.of(b, a));
+
+        assertEquals(Set.of(a, b), cluster.getLocations());
+    }
+
+    private static LocationConditions location(double latitude, double longitude, double brightness) {
+        return new LocationConditions(new Coordinate(latitude, longitude), brightness, null, null);
+    }
+}
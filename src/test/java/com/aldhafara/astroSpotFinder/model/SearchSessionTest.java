@@ -0,0 +1,74 @@
+package com.aldhafara.astroSpotFinder.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SearchSessionTest {
+
+    @Test
+    void shouldHandOutAtMostMaxParallelismForks() {
+        SearchSession session = new SearchSession(2);
+
+        assertTrue(session.tryFork());
+        assertTrue(session.tryFork());
+        assertFalse(session.tryFork());
+
+        session.joinFork();
+        assertTrue(session.tryFork());
+    }
+
+    @Test
+    void shouldExpireAfterTimeout() throws InterruptedException {
+        SearchSession unbounded = new SearchSession(1);
+        SearchSession bounded = new SearchSession(1, Duration.ofMillis(20));
+
+        assertEquals(Long.MAX_VALUE, unbounded.remainingNanos());
+        assertFalse(bounded.isExpired());
+        Thread.sleep(50);
+        assertTrue(bounded.isExpired());
+        assertFalse(unbounded.isExpired());
+    }
+
+    @Test
+    void shouldInterruptWorkers_whenCancelled() throws InterruptedException {
+        SearchSession session = new SearchSession(1, Duration.ofMinutes(1));
+        CountDownLatch entered = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        Thread worker = Thread.ofVirtual().start(() -> {
+            session.enter();
+            try {
+                entered.countDown();
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            } finally {
+                session.exit();
+            }
+        });
+        entered.await();
+
+        session.cancel();
+
+        assertTrue(worker.join(Duration.ofSeconds(5)));
+        assertTrue(interrupted.get());
+        assertTrue(session.isExpired());
+    }
+
+    @Test
+    void shouldKeepDeepestReachedDepth() {
+        SearchSession session = new SearchSession();
+
+        assertEquals(-1, session.depthReached());
+        session.reached(2);
+        session.reached(1);
+
+        assertEquals(2, session.depthReached());
+    }
+}
@@ -0,0 +1,87 @@
+package com.aldhafara.astroSpotFinder.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VisitedCellsTest {
+
+    @Test
+    void shouldLetOnlyFirstBranchClaimCell() {
+        VisitedCells visitedCells = new VisitedCells();
+        long cell = GridCell.key(50.0, 20.0);
+
+        assertTrue(visitedCells.claim(cell));
+        assertFalse(visitedCells.claim(cell));
+        assertTrue(Double.isNaN(visitedCells.brightness(cell)));
+
+        visitedCells.resolve(cell, 12.5);
+
+        assertEquals(12.5, visitedCells.brightness(cell));
+        assertEquals(1, visitedCells.size());
+    }
+
+    @Test
+    void shouldWaitForBranchThatClaimedCell() throws Exception {
+        VisitedCells visitedCells = new VisitedCells();
+        long cell = GridCell.key(50.0, 20.0);
+        visitedCells.claim(cell);
+
+        CompletableFuture<Double> waiting = CompletableFuture.supplyAsync(() -> visitedCells.awaitBrightness(cell));
+        Thread.sleep(50);
+        assertFalse(waiting.isDone());
+
+        visitedCells.resolve(cell, 12.5);
+
+        assertEquals(12.5, waiting.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shouldLetLaterBranchClaimReleasedCell() throws Exception {
+        VisitedCells visitedCells = new VisitedCells();
+        long cell = GridCell.key(50.0, 20.0);
+        visitedCells.claim(cell);
+        CompletableFuture<Double> waiting = CompletableFuture.supplyAsync(() -> visitedCells.awaitBrightness(cell));
+
+        visitedCells.release(cell);
+
+        assertTrue(Double.isNaN(waiting.get(1, TimeUnit.SECONDS)));
+        assertTrue(visitedCells.claim(cell));
+        visitedCells.resolve(cell, 12.5);
+        visitedCells.release(cell);
+        assertEquals(12.5, visitedCells.brightness(cell));
+    }
+
+    @Test
+    void shouldReportRepeatRatePerDepth() {
+        VisitedCells visitedCells = new VisitedCells();
+
+        visitedCells.record(0, 10, 0);
+        visitedCells.record(1, 30, 10);
+        visitedCells.record(1, 10, 10);
+
+        assertEquals(0.0, visitedCells.repeatRates().get(0));
+        assertEquals(0.5, visitedCells.repeatRates().get(1));
+    }
+
+    @Test
+    void shouldCountEachPrunedSpotOnceAtItsFirstDepth() {
+        VisitedCells visitedCells = new VisitedCells();
+        long first = GridCell.key(50.0, 20.0);
+        long second = GridCell.key(50.1, 20.0);
+
+        assertTrue(visitedCells.prune(first, 1));
+        assertFalse(visitedCells.prune(first, 2));
+        assertTrue(visitedCells.prune(second, 2));
+
+        assertTrue(visitedCells.isPruned(first));
+        assertFalse(visitedCells.isPruned(GridCell.key(50.2, 20.0)));
+        assertEquals(Map.of(1, 1, 2, 1), visitedCells.pruneCounts());
+    }
+}
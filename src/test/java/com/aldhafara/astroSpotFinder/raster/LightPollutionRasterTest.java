@@ -0,0 +1,118 @@
+package com.aldhafara.astroSpotFinder.raster;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LightPollutionRasterTest {
+
+    private static final String ASCII_GRID = """
+            ncols 5
+            nrows 3
+            xllcorner 20.0
+            yllcorner 50.0
+            cellsize 0.5
+            NODATA_value -9999
+            1 2 3 4 5
+            6 7 -9999 9 10
+            11 12 13 14 15
+            """;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldReadValuesWrittenByConverter() throws IOException {
+        LightPollutionRaster raster = convert(ASCII_GRID, 2);
+
+        assertEquals(5, raster.width());
+        assertEquals(3, raster.height());
+        assertEquals(1.0, raster.brightness(51.4, 20.1));
+        assertEquals(5.0, raster.brightness(51.4, 22.4));
+        assertEquals(9.0, raster.brightness(50.9, 21.7));
+        assertEquals(15.0, raster.brightness(50.1, 22.4));
+    }
+
+    @Test
+    void shouldReturnNaN_forNoDataAndOutsideRaster() throws IOException {
+        LightPollutionRaster raster = convert(ASCII_GRID, 2);
+
+        assertTrue(Double.isNaN(raster.brightness(50.9, 21.2)));
+        assertTrue(Double.isNaN(raster.brightness(49.9, 21.0)));
+        assertTrue(Double.isNaN(raster.brightness(51.6, 21.0)));
+        assertTrue(Double.isNaN(raster.brightness(50.5, 22.6)));
+    }
+
+    @Test
+    void shouldSkipTilesWithoutData() throws IOException {
+        String grid = """
+                ncols 4
+                nrows 2
+                xllcenter 0.5
+                yllcenter 0.5
+                cellsize 1
+                NODATA_value -1
+                -1 -1 3 4
+                -1 -1 7 8
+                """;
+        Path output = tempDir.resolve("sparse.lpr");
+        Files.writeString(tempDir.resolve("sparse.asc"), grid);
+
+        LightPollutionRasterConverter.convert(tempDir.resolve("sparse.asc"), output, 2);
+        LightPollutionRaster raster = LightPollutionRaster.open(output);
+
+        assertEquals(LightPollutionRaster.HEADER_BYTES + 2 * Long.BYTES + 4 * Float.BYTES, Files.size(output));
+        assertTrue(Double.isNaN(raster.brightness(1.5, 0.5)));
+        assertEquals(7.0, raster.brightness(0.5, 2.5));
+    }
+
+    @Test
+    void shouldReadTilesAcrossSegments() throws IOException {
+        String grid = """
+                ncols 4
+                nrows 4
+                xllcenter 0.5
+                yllcenter 0.5
+                cellsize 1
+                NODATA_value -1
+                1 2 3 4
+                5 6 7 8
+                9 10 11 12
+                13 14 15 16
+                """;
+        Path output = tempDir.resolve("segmented.lpr");
+        Files.writeString(tempDir.resolve("segmented.asc"), grid);
+        LightPollutionRasterConverter.convert(tempDir.resolve("segmented.asc"), output, 2);
+
+        LightPollutionRaster raster = LightPollutionRaster.open(output, 2 * 4 * Float.BYTES);
+
+        assertEquals(2, raster.segmentCount());
+        assertEquals(1.0, raster.brightness(3.5, 0.5));
+        assertEquals(4.0, raster.brightness(3.5, 3.5));
+        assertEquals(13.0, raster.brightness(0.5, 0.5));
+        assertEquals(16.0, raster.brightness(0.5, 3.5));
+    }
+
+    @Test
+    void shouldRejectFileWithoutMagicNumber() throws IOException {
+        Path file = tempDir.resolve("invalid.lpr");
+        Files.write(file, new byte[LightPollutionRaster.HEADER_BYTES]);
+
+        assertThrows(IOException.class, () -> LightPollutionRaster.open(file));
+    }
+
+    private LightPollutionRaster convert(String asciiGrid, int tileSize) throws IOException {
+        Path input = tempDir.resolve("input.asc");
+        Path output = tempDir.resolve("output.lpr");
+        Files.writeString(input, asciiGrid);
+        LightPollutionRasterConverter.convert(input, output, tileSize);
+        return LightPollutionRaster.open(output);
+    }
+}
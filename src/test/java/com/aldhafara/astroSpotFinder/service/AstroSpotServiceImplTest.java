@@ -1,8 +1,14 @@
 package com.aldhafara.astroSpotFinder.service;
 
 import com.aldhafara.astroSpotFinder.configuration.TopLocationsConfig;
+import com.aldhafara.astroSpotFinder.model.CandidateBuffer;
 import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.DarkestLocationsResponse;
+import com.aldhafara.astroSpotFinder.model.DarkestLocationsStatus;
+import com.aldhafara.astroSpotFinder.model.GridCell;
+import com.aldhafara.astroSpotFinder.model.GridPoints;
 import com.aldhafara.astroSpotFinder.model.GridSize;
+import com.aldhafara.astroSpotFinder.model.LightPollutionBatchResponse;
 import com.aldhafara.astroSpotFinder.model.LightPollutionInfo;
 import com.aldhafara.astroSpotFinder.model.LocationConditions;
 import com.aldhafara.astroSpotFinder.model.LocationsCluster;
@@ -10,21 +16,41 @@ import com.aldhafara.astroSpotFinder.model.LocationsWithBrightnessResponse;
 import com.aldhafara.astroSpotFinder.model.SearchArea;
 import com.aldhafara.astroSpotFinder.model.SearchContext;
 import com.aldhafara.astroSpotFinder.model.SearchParams;
+import com.aldhafara.astroSpotFinder.model.SearchSession;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.client.ResourceAccessException;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -34,8 +60,6 @@ class AstroSpotServiceImplTest {
     @Mock
     LightPollutionService lightPollutionService;
     @Mock
-    DistanceService distanceService;
-    @Mock
     StraightLineDistanceService straightLineDistanceService;
     @Mock
     WeatherForecastService weatherForecastService;
@@ -54,11 +78,13 @@ class AstroSpotServiceImplTest {
 
         service = new AstroSpotServiceImpl(
                 lightPollutionService,
-                distanceService,
                 straightLineDistanceService,
                 weatherForecastService,
                 locationScorer,
-                topLocationsConfig
+                topLocationsConfig,
+                "haversine",
+                "square",
+                0.0
         );
     }
 
@@ -69,12 +95,80 @@ class AstroSpotServiceImplTest {
         SearchArea originArea = searchArea;
         GridSize gridSize = new GridSize(0.01, 0.01);
 
-        when(distanceService.findDistance(any(), any())).thenReturn(1.0);
-
         Set<Coordinate> result = service.findPointsWithinRadius(searchArea, originArea, gridSize);
 
+        assertEquals(latticePointsWithinRadius(searchArea, gridSize), result);
+        assertEquals(15, result.size());
+    }
+
+    @Test
+    void findPointsWithinRadius_coversWholeCircleAtHighLatitude() {
+        SearchArea searchArea = new SearchArea(new Coordinate(69.5, 19), 10.0);
+        GridSize gridSize = new GridSize(0.05, 0.05);
+
+        Set<Coordinate> result = service.findPointsWithinRadius(searchArea, searchArea, gridSize);
+
+        assertEquals(latticePointsWithinRadius(searchArea, gridSize), result);
+    }
+
+    @Test
+    void findPointsWithinRadius_keepsOnlyPointsInsideOriginArea() {
+        SearchArea origin = new SearchArea(new Coordinate(50, 20), 5.0);
+        SearchArea searchArea = new SearchArea(new Coordinate(50, 20.07), 3.0);
+        GridSize gridSize = new GridSize(0.01, 0.01);
+
+        Set<Coordinate> result = service.findPointsWithinRadius(searchArea, origin, gridSize);
+
+        Set<Coordinate> expected = new HashSet<>(latticePointsWithinRadius(searchArea, gridSize));
+        expected.retainAll(latticePointsWithinRadius(origin, gridSize));
         assertFalse(result.isEmpty());
-        assertEquals(72, result.size());
+        assertEquals(expected, result);
+    }
+
+    @Test
+    void findPointsWithinRadius_onHexagonalLattice_needsFewerPointsForSameCoverage() {
+        AstroSpotServiceImpl hexagonalService = new AstroSpotServiceImpl(lightPollutionService, straightLineDistanceService,
+                weatherForecastService, locationScorer, topLocationsConfig, "haversine", "hexagonal", 0.0);
+        SearchArea searchArea = new SearchArea(new Coordinate(52, 20), 60.0);
+        GridSize gridSize = GridSize.atLatitude(0.09, 0.147, 52, 52);
+        StraightLineDistanceService haversine = new StraightLineDistanceService();
+
+        Set<Coordinate> square = service.findPointsWithinRadius(searchArea, searchArea, gridSize);
+        Set<Coordinate> hexagonal = hexagonalService.findPointsWithinRadius(searchArea, searchArea, gridSize);
+        Set<Coordinate> probes = service.findPointsWithinRadius(new SearchArea(searchArea.center(), 50.0), searchArea,
+                new GridSize(gridSize.latitudeDegrees() / 7, gridSize.longitudeDegrees() / 7));
+
+        assertEquals(hexLatticePointsWithinRadius(searchArea, gridSize), hexagonal);
+        assertEquals(0.866, (double) hexagonal.size() / square.size(), 0.02);
+        double cellKm = gridSize.latitudeDegrees() * Math.PI * 6371.0 / 180;
+        for (Coordinate probe : probes) {
+            double gap = hexagonal.stream().mapToDouble(point -> haversine.findDistance(probe, point)).min().orElseThrow();
+            assertTrue(gap <= cellKm * 2 / 3 * 1.01, "gap " + gap + " at " + probe);
+        }
+    }
+
+    @Test
+    void findPointsWithinRadius_onHexagonalLattice_keepsCoarsePointsWhenRefined() {
+        AstroSpotServiceImpl hexagonalService = new AstroSpotServiceImpl(lightPollutionService, straightLineDistanceService,
+                weatherForecastService, locationScorer, topLocationsConfig, "haversine", "hexagonal", 0.0);
+        SearchArea searchArea = new SearchArea(new Coordinate(-33.9, 151.2), 40.0);
+        GridSize gridSize = new GridSize(0.09, 0.11);
+
+        Set<Coordinate> coarse = hexagonalService.findPointsWithinRadius(searchArea, searchArea, gridSize);
+        for (int divisor : new int[]{2, 3}) {
+            Set<Coordinate> fine = hexagonalService.findPointsWithinRadius(searchArea, searchArea,
+                    new GridSize(gridSize.latitudeDegrees() / divisor, gridSize.longitudeDegrees() / divisor));
+
+            assertFalse(coarse.isEmpty());
+            assertTrue(fine.containsAll(coarse), "divisor " + divisor);
+        }
+    }
+
+    @Test
+    void findPointsWithinRadius_returnsEmptySetForInvalidRadius() {
+        SearchArea searchArea = new SearchArea(new Coordinate(50, 20), 0);
+
+        assertTrue(service.findPointsWithinRadius(searchArea, searchArea, new GridSize(0.01, 0.01)).isEmpty());
     }
 
     @Test
@@ -82,7 +176,8 @@ class AstroSpotServiceImplTest {
         Coordinate coord1 = new Coordinate(50, 21);
         LightPollutionInfo info = new LightPollutionInfo(50, 21,0.2);
 
-        when(lightPollutionService.getLightPollution(coord1)).thenReturn(Optional.of(info));
+        when(lightPollutionService.getLightPollution(Set.of(coord1)))
+                .thenReturn(new LightPollutionBatchResponse(Map.of(coord1, info), Set.of()));
 
         LocationsWithBrightnessResponse result = service.getBrightnessForLocations(Set.of(coord1));
 
@@ -91,6 +186,22 @@ class AstroSpotServiceImplTest {
         assertEquals(0.2, result.getLocationsWithBrightness().iterator().next().brightness());
     }
 
+    @Test
+    void getBrightness_reportsInaccurateAnswer_whenCoordinatesAreRateLimited() {
+        Coordinate coord1 = new Coordinate(50, 21);
+        Coordinate coord2 = new Coordinate(50, 22);
+        LightPollutionInfo info = new LightPollutionInfo(50, 21, 0.2);
+
+        when(lightPollutionService.getLightPollution(Set.of(coord1, coord2)))
+                .thenReturn(new LightPollutionBatchResponse(Map.of(coord1, info), Set.of(coord2)));
+
+        LocationsWithBrightnessResponse result = service.getBrightnessForLocations(Set.of(coord1, coord2));
+
+        assertEquals(1, result.getLocationsWithBrightness().size());
+        assertEquals(Set.of(DarkestLocationsStatus.ANSWER_MAY_BE_INACCURATE_PLEASE_TRY_AGAIN_LATER.getMessage()),
+                result.getAdditionalMessages());
+    }
+
     @Test
     void getTopLocationConditions_returnsCorrectTopResults() {
         LocationConditions loc1 = new LocationConditions(new Coordinate(1, 1), 0.1, null, null);
@@ -107,6 +218,41 @@ class AstroSpotServiceImplTest {
         assertTrue(result.contains(loc1));
     }
 
+    @Test
+    void getTopCandidates_selectsSameLocationsAsGetTopLocationConditions() {
+        CandidateBuffer candidates = new CandidateBuffer();
+        Set<LocationConditions> locations = new HashSet<>();
+        for (int i = 0; i < 40; i++) {
+            long cellKey = GridCell.key(50 + i * 0.01, 20 + (i % 7) * 0.01);
+            double brightness = (i * 13 % 41) / 10.0;
+            candidates.add(cellKey, brightness);
+            locations.add(new LocationConditions(GridCell.coordinate(cellKey), brightness, null, null));
+        }
+
+        CandidateBuffer top = service.getTopCandidates(candidates);
+
+        assertEquals(service.getTopLocationConditions(locations), top.toLocations());
+        for (int i = 1; i < top.size(); i++) {
+            assertTrue(top.brightness()[i - 1] <= top.brightness()[i]);
+        }
+    }
+
+    @Test
+    void clusterCandidates_matchesClusterByProximity() {
+        StraightLineDistanceService distanceService = new StraightLineDistanceService();
+        CandidateBuffer candidates = new CandidateBuffer();
+        candidates.add(GridCell.key(50.0, 20.0), 0.1);
+        candidates.add(GridCell.key(50.05, 20.05), 0.2);
+        candidates.add(GridCell.key(49.0, 19.0), 0.3);
+
+        List<LocationsCluster> clusters = service.clusterCandidates(candidates, 10.0, distanceService);
+
+        assertEquals(service.clusterByProximity(candidates.toLocations(), 10.0, distanceService).stream()
+                        .map(LocationsCluster::getLocations).collect(Collectors.toSet()),
+                clusters.stream().map(LocationsCluster::getLocations).collect(Collectors.toSet()));
+        assertEquals(2, clusters.size());
+    }
+
     @Test
     void isInvalidSearchParams_detectsInvalidParams() {
         SearchContext ctx = SearchContext.builder()
@@ -125,6 +271,28 @@ class AstroSpotServiceImplTest {
         assertTrue(service.isInvalidSearchParams(params));
     }
 
+    @Test
+    void clusterByProximity_withLocalProjection_groupsPointsWithinEps() {
+        AstroSpotServiceImpl localService = new AstroSpotServiceImpl(lightPollutionService, straightLineDistanceService,
+                weatherForecastService, locationScorer, topLocationsConfig, "local-projection", "square", 0.0);
+        SearchArea origin = new SearchArea(new Coordinate(50, 20), 150);
+        SearchParams params = SearchParams.builder()
+                .searchContext(SearchContext.builder().maxDepth(3).gridDiv(2).searchArea(origin).build())
+                .gridSize(new GridSize(0.1, 0.1))
+                .originSearchArea(origin)
+                .build();
+        LocationConditions loc1 = new LocationConditions(new Coordinate(51.0, 21.0), 0.1, null, null);
+        LocationConditions loc2 = new LocationConditions(new Coordinate(51.05, 21.05), 0.2, null, null);
+        LocationConditions loc3 = new LocationConditions(new Coordinate(49.0, 19.0), 0.3, null, null);
+
+        DistanceService distanceService = localService.distanceService(params);
+        List<LocationsCluster> clusters = localService.clusterByProximity(Set.of(loc1, loc2, loc3), 10.0, distanceService);
+
+        assertInstanceOf(LocalProjectionDistanceService.class, distanceService);
+        assertEquals(2, clusters.size());
+        assertTrue(clusters.stream().anyMatch(c -> c.getLocations().equals(Set.of(loc1, loc2))));
+    }
+
     @Test
     void mergeOverlappingClusters_mergesCloseClustersCorrectly() {
         double eps = 10.0;
@@ -139,11 +307,11 @@ class AstroSpotServiceImplTest {
 
         List<LocationsCluster> clusters = new ArrayList<>(List.of(cluster1, cluster2, cluster3));
 
-        when(straightLineDistanceService.findDistance(loc1.coordinate(), loc2.coordinate())).thenReturn(5.0);
-
-        when(straightLineDistanceService.findDistance(loc1.coordinate(), loc3.coordinate())).thenReturn(20.0);
-
-        when(straightLineDistanceService.findDistance(loc2.coordinate(), loc3.coordinate())).thenReturn(20.0);
+        Map<Set<Coordinate>, Double> distances = Map.of(
+                Set.of(loc1.coordinate(), loc2.coordinate()), 5.0,
+                Set.of(loc1.coordinate(), loc3.coordinate()), 20.0,
+                Set.of(loc2.coordinate(), loc3.coordinate()), 20.0);
+        stubDistances(straightLineDistanceService, (a, b) -> distances.get(Set.of(a, b)));
 
         List<LocationsCluster> mergedClusters = service.mergeOverlappingClusters(clusters, eps);
 
@@ -158,5 +326,274 @@ class AstroSpotServiceImplTest {
         assertTrue(clusterContainsLoc3);
     }
 
+    @Test
+    void searchBestLocationsClusters_completesManyConcurrentDeepSearches() throws Exception {
+        when(straightLineDistanceService.findDistance(any(), any())).thenReturn(0.0);
+        when(lightPollutionService.getLightPollution(anyCollection())).thenAnswer(invocation -> {
+            Collection<Coordinate> coordinates = invocation.getArgument(0);
+            Map<Coordinate, LightPollutionInfo> brightness = coordinates.stream().collect(Collectors.toMap(
+                    Function.identity(),
+                    c -> new LightPollutionInfo(c.latitude(), c.longitude(), Math.abs(c.latitude() - 50) + Math.abs(c.longitude() - 20))));
+            return new LightPollutionBatchResponse(brightness, Set.of());
+        });
+
+        List<SearchSession> sessions = new ArrayList<>();
+        ExecutorService requests = Executors.newFixedThreadPool(50);
+        try {
+            List<Future<DarkestLocationsResponse>> responses = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                SearchSession session = new SearchSession(4);
+                sessions.add(session);
+                SearchArea area = new SearchArea(new Coordinate(50, 20), 10);
+                SearchParams params = SearchParams.builder()
+                        .searchContext(SearchContext.builder().maxDepth(2).gridDiv(2).searchArea(area).session(session).build())
+                        .gridSize(new GridSize(0.1, 0.1))
+                        .depth(0)
+                        .originSearchArea(area)
+                        .build();
+                responses.add(requests.submit(() -> service.searchBestLocationsClusters(params)));
+            }
+
+            for (Future<DarkestLocationsResponse> response : responses) {
+                DarkestLocationsResponse result = response.get(60, TimeUnit.SECONDS);
+                assertEquals(DarkestLocationsStatus.THIS_RESPONSE_IS_ACCURATE.getMessage(), result.additionalMessage());
+                assertFalse(result.locationsCluster().isEmpty());
+            }
+        } finally {
+            requests.shutdownNow();
+        }
+
+        assertTrue(sessions.stream().allMatch(session -> session.availableForks() == 4));
+    }
+
+    @Test
+    void searchBestLocationsClusters_returnsDepthZeroClusters_whenTimeLimitIsReached() {
+        when(straightLineDistanceService.findDistance(any(), any())).thenReturn(0.0);
+        AtomicInteger lookups = new AtomicInteger();
+        when(lightPollutionService.getLightPollution(anyCollection())).thenAnswer(invocation -> {
+            if (lookups.getAndIncrement() > 0) {
+                try {
+                    Thread.sleep(30_000);
+                } catch (InterruptedException e) {
+                    throw new ResourceAccessException("cancelled");
+                }
+            }
+            Collection<Coordinate> coordinates = invocation.getArgument(0);
+            return new LightPollutionBatchResponse(coordinates.stream().collect(Collectors.toMap(
+                    Function.identity(),
+                    c -> new LightPollutionInfo(c.latitude(), c.longitude(), Math.abs(c.latitude() - 50)))), Set.of());
+        });
+        SearchArea area = new SearchArea(new Coordinate(50, 20), 10);
+        SearchParams params = SearchParams.builder()
+                .searchContext(SearchContext.builder().maxDepth(2).gridDiv(2).searchArea(area)
+                        .session(new SearchSession(4, Duration.ofMillis(300))).build())
+                .gridSize(new GridSize(0.1, 0.1))
+                .depth(0)
+                .originSearchArea(area)
+                .build();
+
+        DarkestLocationsResponse result = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> service.searchBestLocationsClusters(params));
+
+        assertEquals(0, result.depthReached());
+        assertTrue(result.additionalMessage().contains(DarkestLocationsStatus.SEARCH_TIME_LIMIT_REACHED.getMessage()));
+        assertFalse(result.locationsCluster().isEmpty());
+        assertFalse(result.locationsCluster().getFirst().getLocations().isEmpty());
+    }
+
+    @Test
+    void searchBestLocationsClusters_looksUpEveryCellAtMostOnce() {
+        when(straightLineDistanceService.findDistance(any(), any())).thenReturn(0.0);
+        List<Long> lookedUp = new ArrayList<>();
+        when(lightPollutionService.getLightPollution(anyCollection())).thenAnswer(invocation -> {
+            Collection<Coordinate> coordinates = invocation.getArgument(0);
+            synchronized (lookedUp) {
+                coordinates.forEach(c -> lookedUp.add(GridCell.key(c)));
+            }
+            return new LightPollutionBatchResponse(coordinates.stream().collect(Collectors.toMap(
+                    Function.identity(),
+                    c -> new LightPollutionInfo(c.latitude(), c.longitude(), Math.abs(c.latitude() - 50.02) + Math.abs(c.longitude() - 20.03)))), Set.of());
+        });
+        SearchSession session = new SearchSession();
+        SearchArea area = new SearchArea(new Coordinate(50, 20), 10);
+        SearchParams params = SearchParams.builder()
+                .searchContext(SearchContext.builder().maxDepth(2).gridDiv(2).searchArea(area).session(session).build())
+                .gridSize(new GridSize(0.1, 0.1))
+                .depth(0)
+                .originSearchArea(area)
+                .build();
+
+        DarkestLocationsResponse result = service.searchBestLocationsClusters(params);
+
+        assertFalse(result.locationsCluster().isEmpty());
+        assertEquals(lookedUp.size(), new HashSet<>(lookedUp).size());
+        assertEquals(lookedUp.size(), session.visitedCells().size());
+        assertTrue(session.visitedCells().repeatRates().get(2) > 0.0);
+    }
+
+    @Test
+    void spotsToRefine_leavesSpotsWithFlatNeighbourhoodUnrefined() {
+        AstroSpotServiceImpl adaptiveService = new AstroSpotServiceImpl(lightPollutionService, straightLineDistanceService,
+                weatherForecastService, locationScorer, topLocationsConfig, "haversine", "square", 0.5);
+        GridSize gridSize = new GridSize(0.1, 0.1);
+        SearchSession session = new SearchSession();
+        LocationConditions flat = new LocationConditions(new Coordinate(50.0, 20.0), 1.0, null, null);
+        LocationConditions steep = new LocationConditions(new Coordinate(51.0, 21.0), 1.0, null, null);
+        LocationConditions unknown = new LocationConditions(new Coordinate(52.0, 22.0), 1.0, null, null);
+        resolveNeighbours(session, flat, gridSize, new double[]{1.1, 1.2, 1.3, 0.9});
+        resolveNeighbours(session, steep, gridSize, new double[]{1.1, 1.2, 1.3, 3.0});
+        resolveNeighbours(session, unknown, gridSize, new double[]{1.1, 1.2});
+
+        List<LocationConditions> depthOne = adaptiveService.spotsToRefine(params(session, gridSize, 1), List.of(flat, steep, unknown));
+        List<LocationConditions> depthTwo = adaptiveService.spotsToRefine(params(session, new GridSize(0.05, 0.05), 2), List.of(flat, steep));
+
+        assertEquals(List.of(steep, unknown), depthOne);
+        assertEquals(List.of(steep), depthTwo);
+        assertEquals(Map.of(1, 1), session.visitedCells().pruneCounts());
+    }
+
+    @Test
+    void recursiveSearchForTopSpotsInCluster_doesNotCountDepth_whenNoSpotIsRefined() {
+        AstroSpotServiceImpl adaptiveService = new AstroSpotServiceImpl(lightPollutionService, straightLineDistanceService,
+                weatherForecastService, locationScorer, topLocationsConfig, "haversine", "square", 0.5);
+        GridSize gridSize = new GridSize(0.1, 0.1);
+        SearchSession session = new SearchSession();
+        LocationConditions flat = new LocationConditions(new Coordinate(50.0, 20.0), 1.0, null, null);
+        resolveNeighbours(session, flat, gridSize, new double[]{1.1, 1.2, 1.3, 0.9});
+        session.reached(1);
+
+        adaptiveService.recursiveSearchForTopSpotsInCluster(params(session, gridSize, 1), new HashSet<>(Set.of(flat)));
+
+        assertEquals(1, session.depthReached());
+    }
+
+    @Test
+    void spotsToRefine_refinesEverySpot_whenFlatRangeIsZero() {
+        GridSize gridSize = new GridSize(0.1, 0.1);
+        SearchSession session = new SearchSession();
+        LocationConditions flat = new LocationConditions(new Coordinate(50.0, 20.0), 1.0, null, null);
+        resolveNeighbours(session, flat, gridSize, new double[]{1.0, 1.0, 1.0, 1.0});
+
+        assertEquals(List.of(flat), service.spotsToRefine(params(session, gridSize, 1), List.of(flat)));
+        assertTrue(session.visitedCells().pruneCounts().isEmpty());
+    }
+
+    @Test
+    void gridNeighbours_areTheClosestLatticePoints() {
+        GridSize gridSize = new GridSize(0.1, 0.1);
+        double hexColumnStep = gridSize.longitudeDegrees() * (2 / Math.sqrt(3));
+        for (double latitude : new double[]{50.0, 50.1}) {
+            long squareKey = GridCell.key(latitude, 20.0);
+            Set<Coordinate> squareNeighbours = toCoordinates(GridPoints.neighbours(squareKey, gridSize, false));
+            Set<Coordinate> squareExpected = latticePointsWithinRadius(new SearchArea(GridCell.coordinate(squareKey), 13.7), gridSize);
+            squareExpected.remove(GridCell.coordinate(squareKey));
+
+            double shift = Math.round(latitude / gridSize.latitudeDegrees()) % 2 != 0 ? 0.5 : 0;
+            long hexKey = GridCell.key(latitude, (Math.rint(20.0 / hexColumnStep - shift) + shift) * hexColumnStep);
+            Set<Coordinate> hexNeighbours = toCoordinates(GridPoints.neighbours(hexKey, gridSize, true));
+            Set<Coordinate> hexExpected = hexLatticePointsWithinRadius(new SearchArea(GridCell.coordinate(hexKey), 13.0), gridSize);
+            hexExpected.remove(GridCell.coordinate(hexKey));
+
+            assertEquals(8, squareNeighbours.size());
+            assertEquals(squareExpected, squareNeighbours);
+            assertEquals(6, hexNeighbours.size());
+            assertEquals(hexExpected, hexNeighbours);
+        }
+    }
+
+    @Test
+    void getBrightnessForUnvisited_releasesClaims_whenLookupFails() {
+        SearchSession session = new SearchSession();
+        SearchArea area = new SearchArea(new Coordinate(50, 20), 10);
+        GridPoints gridPoints = GridPoints.withinRadius(area, area, new GridSize(0.1, 0.1));
+        when(lightPollutionService.getLightPollution(anyCollection()))
+                .thenThrow(new IllegalStateException("upstream down"))
+                .thenAnswer(invocation -> {
+                    Collection<Coordinate> coordinates = invocation.getArgument(0);
+                    return new LightPollutionBatchResponse(coordinates.stream().collect(Collectors.toMap(
+                            Function.identity(), c -> new LightPollutionInfo(c.latitude(), c.longitude(), 5.0))), Set.of());
+                });
+
+        assertThrows(IllegalStateException.class,
+                () -> service.getBrightnessForUnvisited(session, 0, gridPoints, new HashSet<>()));
+        CandidateBuffer candidates = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> service.getBrightnessForUnvisited(session, 0, gridPoints, new HashSet<>()));
+
+        assertEquals(gridPoints.size(), candidates.size());
+        assertEquals(gridPoints.size(), session.visitedCells().size());
+    }
 
+    private static void resolveNeighbours(SearchSession session, LocationConditions spot, GridSize gridSize, double[] brightness) {
+        long[] neighbours = GridPoints.neighbours(GridCell.key(spot.coordinate()), gridSize, false);
+        for (int i = 0; i < brightness.length; i++) {
+            session.visitedCells().claim(neighbours[i]);
+            session.visitedCells().resolve(neighbours[i], brightness[i]);
+        }
+    }
+
+    private static SearchParams params(SearchSession session, GridSize gridSize, int depth) {
+        SearchArea area = new SearchArea(new Coordinate(50, 20), 10);
+        return SearchParams.builder()
+                .searchContext(SearchContext.builder().maxDepth(3).gridDiv(2).searchArea(area).session(session).build())
+                .gridSize(gridSize)
+                .depth(depth)
+                .originSearchArea(area)
+                .build();
+    }
+
+    private static Set<Coordinate> toCoordinates(long[] keys) {
+        return Arrays.stream(keys).mapToObj(GridCell::coordinate).collect(Collectors.toSet());
+    }
+
+    static void stubDistances(DistanceService distanceService, BiFunction<Coordinate, Coordinate, Double> distance) {
+        doAnswer(invocation -> {
+            Coordinate origin = invocation.getArgument(0);
+            double[] latitudes = invocation.getArgument(1);
+            double[] longitudes = invocation.getArgument(2);
+            int count = invocation.getArgument(3);
+            double[] out = invocation.getArgument(4);
+            for (int i = 0; i < count; i++) {
+                out[i] = distance.apply(origin, new Coordinate(latitudes[i], longitudes[i]));
+            }
+            return null;
+        }).when(distanceService).distancesFrom(any(), any(), any(), anyInt(), any());
+    }
+
+    private static Set<Coordinate> hexLatticePointsWithinRadius(SearchArea area, GridSize gridSize) {
+        StraightLineDistanceService haversine = new StraightLineDistanceService();
+        double columnStep = gridSize.longitudeDegrees() * (2 / Math.sqrt(3));
+        Set<Coordinate> points = new HashSet<>();
+        int rows = (int) Math.ceil(area.radiusKm() / 100 / gridSize.latitudeDegrees()) + 1;
+        int columns = (int) Math.ceil(area.radiusKm() / 30 / columnStep) + 1;
+        int centerRow = (int) Math.round(area.center().latitude() / gridSize.latitudeDegrees());
+        int centerColumn = (int) Math.round(area.center().longitude() / columnStep);
+        for (int row = centerRow - rows; row <= centerRow + rows; row++) {
+            double shift = (row & 1) != 0 ? 0.5 : 0;
+            for (int column = centerColumn - columns; column <= centerColumn + columns; column++) {
+                Coordinate point = GridCell.coordinate(GridCell.key(row * gridSize.latitudeDegrees(), (column + shift) * columnStep));
+                if (haversine.findDistance(area.center(), point) <= area.radiusKm()) {
+                    points.add(point);
+                }
+            }
+        }
+        return points;
+    }
+
+    private static Set<Coordinate> latticePointsWithinRadius(SearchArea area, GridSize gridSize) {
+        StraightLineDistanceService haversine = new StraightLineDistanceService();
+        Set<Coordinate> points = new HashSet<>();
+        int rows = (int) Math.ceil(area.radiusKm() / 100 / gridSize.latitudeDegrees()) + 1;
+        int columns = (int) Math.ceil(area.radiusKm() / 30 / gridSize.longitudeDegrees()) + 1;
+        int centerRow = (int) Math.round(area.center().latitude() / gridSize.latitudeDegrees());
+        int centerColumn = (int) Math.round(area.center().longitude() / gridSize.longitudeDegrees());
+        for (int row = centerRow - rows; row <= centerRow + rows; row++) {
+            for (int column = centerColumn - columns; column <= centerColumn + columns; column++) {
+                Coordinate point = GridCell.coordinate(GridCell.key(row * gridSize.latitudeDegrees(), column * gridSize.longitudeDegrees()));
+                if (haversine.findDistance(area.center(), point) <= area.radiusKm()) {
+                    points.add(point);
+                }
+            }
+        }
+        return points;
+    }
 }
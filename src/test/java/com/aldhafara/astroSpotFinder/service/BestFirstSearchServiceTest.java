@@ -0,0 +1,134 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import com.aldhafara.astroSpotFinder.configuration.TopLocationsConfig;
+import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.DarkestLocationsResponse;
+import com.aldhafara.astroSpotFinder.model.DarkestLocationsStatus;
+import com.aldhafara.astroSpotFinder.model.GridSize;
+import com.aldhafara.astroSpotFinder.model.LightPollutionBatchResponse;
+import com.aldhafara.astroSpotFinder.model.LightPollutionInfo;
+import com.aldhafara.astroSpotFinder.model.LocationConditions;
+import com.aldhafara.astroSpotFinder.model.SearchArea;
+import com.aldhafara.astroSpotFinder.model.SearchContext;
+import com.aldhafara.astroSpotFinder.model.SearchParams;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BestFirstSearchServiceTest {
+
+    private static final Coordinate DARKEST = new Coordinate(50.03, 20.04);
+
+    @Mock
+    LightPollutionService lightPollutionService;
+    @Mock
+    StraightLineDistanceService straightLineDistanceService;
+    @Mock
+    WeatherForecastService weatherForecastService;
+    @Mock
+    LocationScorer locationScorer;
+
+    AstroSpotServiceImpl astroSpotService;
+    AtomicInteger lookups = new AtomicInteger();
+
+    @BeforeEach
+    void setup() {
+        TopLocationsConfig topLocationsConfig = mock(TopLocationsConfig.class);
+        when(topLocationsConfig.number()).thenReturn(3);
+        when(topLocationsConfig.percent()).thenReturn(10.0);
+        when(topLocationsConfig.extended()).thenReturn(false);
+        astroSpotService = new AstroSpotServiceImpl(lightPollutionService, straightLineDistanceService,
+                weatherForecastService, locationScorer, topLocationsConfig, "haversine", "square", 0.0);
+
+        when(straightLineDistanceService.findDistance(any(), any())).thenAnswer(invocation -> km(invocation.getArgument(0), invocation.getArgument(1)));
+        AstroSpotServiceImplTest.stubDistances(straightLineDistanceService, BestFirstSearchServiceTest::km);
+        when(lightPollutionService.getLightPollution(anyCollection())).thenAnswer(invocation -> {
+            Collection<Coordinate> coordinates = invocation.getArgument(0);
+            lookups.addAndGet(coordinates.size());
+            return new LightPollutionBatchResponse(coordinates.stream().collect(Collectors.toMap(
+                    Function.identity(),
+                    c -> new LightPollutionInfo(c.latitude(), c.longitude(), km(c, DARKEST)))), Set.of());
+        });
+    }
+
+    @Test
+    void shouldFindDarkestSpotWithFewerLookupsThanRecursiveSearch() {
+        DarkestLocationsResponse recursive = astroSpotService.searchBestLocationsClusters(params());
+        int recursiveLookups = lookups.getAndSet(0);
+
+        DarkestLocationsResponse bestFirst = new BestFirstSearchService(astroSpotService, recursiveLookups * 3 / 4, 4)
+                .searchBestLocationsClusters(params());
+        int bestFirstLookups = lookups.get();
+
+        assertTrue(bestFirstLookups < recursiveLookups, bestFirstLookups + " >= " + recursiveLookups);
+        assertTrue(darkest(bestFirst) <= darkest(recursive));
+        assertEquals(3, bestFirst.depthReached());
+    }
+
+    @Test
+    void shouldStopWhenBudgetIsSpent() {
+        DarkestLocationsResponse result = new BestFirstSearchService(astroSpotService, 60, 4).searchBestLocationsClusters(params());
+
+        assertTrue(lookups.get() <= 60);
+        assertTrue(result.additionalMessage().contains(DarkestLocationsStatus.LOOKUP_BUDGET_SPENT.getMessage()));
+        assertTrue(darkest(result) < 3.0);
+    }
+
+    @Test
+    void shouldThickenGrid_whenSearchAreaIsSmallerThanGridStep() {
+        SearchArea area = new SearchArea(new Coordinate(50.05, 20.05), 3);
+        SearchParams params = SearchParams.builder()
+                .searchContext(SearchContext.builder().maxDepth(3).gridDiv(2).searchArea(area).build())
+                .gridSize(new GridSize(0.1, 0.1))
+                .depth(0)
+                .originSearchArea(area)
+                .build();
+
+        DarkestLocationsResponse result = new BestFirstSearchService(astroSpotService, 1000, 4).searchBestLocationsClusters(params);
+
+        assertFalse(result.locationsCluster().isEmpty());
+        assertFalse(result.additionalMessage().contains(DarkestLocationsStatus.LIST_BRIGHTEST_SPOTS_IS_EMPTY.getMessage()));
+        assertTrue(darkest(result) < 3.0);
+    }
+
+    private static SearchParams params() {
+        SearchArea area = new SearchArea(new Coordinate(50, 20), 15);
+        return SearchParams.builder()
+                .searchContext(SearchContext.builder().maxDepth(3).gridDiv(2).searchArea(area).build())
+                .gridSize(new GridSize(0.1, 0.1))
+                .depth(0)
+                .originSearchArea(area)
+                .build();
+    }
+
+    private static double darkest(DarkestLocationsResponse response) {
+        return response.locationsCluster().stream()
+                .flatMap(cluster -> cluster.getLocations().stream())
+                .mapToDouble(LocationConditions::brightness)
+                .min()
+                .orElse(Double.MAX_VALUE);
+    }
+
+    private static double km(Coordinate a, Coordinate b) {
+        double dLat = (a.latitude() - b.latitude()) * 111.2;
+        double dLon = (a.longitude() - b.longitude()) * 111.2 * Math.cos(Math.toRadians(a.latitude()));
+        return Math.sqrt(dLat * dLat + dLon * dLon);
+    }
+}
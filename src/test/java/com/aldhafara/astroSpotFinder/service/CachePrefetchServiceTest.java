@@ -0,0 +1,139 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import com.aldhafara.astroSpotFinder.configuration.PrefetchConfig;
+import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.GridSize;
+import com.aldhafara.astroSpotFinder.model.LightPollutionBatchResponse;
+import com.aldhafara.astroSpotFinder.model.LightPollutionInfo;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.boot.actuate.health.Status;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CachePrefetchServiceTest {
+
+    private static final GridSize GRID = new GridSize(0.1, 0.1);
+
+    @Mock
+    private AstroSpotServiceImpl astroSpotService;
+
+    @Mock
+    private LightPollutionService lightPollutionService;
+
+    @Captor
+    private ArgumentCaptor<Collection<Coordinate>> batches;
+
+    private final Coordinate a = new Coordinate(50.0, 20.0);
+    private final Coordinate b = new Coordinate(50.1, 20.0);
+    private final Coordinate c = new Coordinate(50.05, 20.0);
+
+    @BeforeEach
+    void setup() {
+        MockitoAnnotations.openMocks(this);
+        when(astroSpotService.findPointsWithinRadius(any(), any(), eq(GRID))).thenReturn(Set.of(a, b));
+        when(astroSpotService.findPointsWithinRadius(any(), any(), eq(new GridSize(0.05, 0.05))))
+                .thenReturn(Set.of(a, b, c));
+    }
+
+    @Test
+    void shouldPlanDeduplicatedPointsForDepthZeroAndOne() {
+        CachePrefetchService service = service(0.9);
+
+        List<Coordinate> plan = service.plan();
+
+        assertEquals(3, plan.size());
+        assertTrue(plan.containsAll(List.of(a, b, c)));
+    }
+
+    @Test
+    void shouldReportWarmingUntilCoverageThresholdIsReached() {
+        CachePrefetchService service = service(0.9);
+        PrefetchHealthIndicator health = new PrefetchHealthIndicator(service);
+        when(lightPollutionService.getLightPollution(anyCollection()))
+                .thenAnswer(invocation -> {
+                    Collection<Coordinate> batch = invocation.getArgument(0);
+                    return batch.contains(c)
+                            ? new LightPollutionBatchResponse(Map.of(), Set.of(c))
+                            : new LightPollutionBatchResponse(Map.of(a, info(a)), Set.of(), Set.of(b));
+                });
+
+        assertEquals(PrefetchHealthIndicator.WARMING, health.health().getStatus());
+
+        service.prefetch();
+
+        assertFalse(service.isWarm());
+        assertEquals(2.0 / 3, service.coverage(), 1e-9);
+        assertEquals(PrefetchHealthIndicator.WARMING, health.health().getStatus());
+
+        when(lightPollutionService.getLightPollution(anyCollection()))
+                .thenAnswer(invocation -> answered(invocation.getArgument(0)));
+        service.prefetch();
+
+        assertTrue(service.isWarm());
+        assertEquals(Status.UP, health.health().getStatus());
+    }
+
+    @Test
+    void shouldKeepWarming_whenUpstreamFails() {
+        CachePrefetchService service = service(0.5);
+        PrefetchHealthIndicator health = new PrefetchHealthIndicator(service);
+        when(lightPollutionService.getLightPollution(anyCollection()))
+                .thenReturn(new LightPollutionBatchResponse(Map.of(), Set.of()));
+
+        service.prefetch();
+
+        assertFalse(service.isWarm());
+        assertEquals(0.0, service.coverage());
+        assertEquals(PrefetchHealthIndicator.WARMING, health.health().getStatus());
+    }
+
+    @Test
+    void shouldLookUpPointsInBatches() {
+        CachePrefetchService service = service(1.0);
+        when(lightPollutionService.getLightPollution(anyCollection()))
+                .thenAnswer(invocation -> answered(invocation.getArgument(0)));
+
+        service.prefetch();
+
+        verify(lightPollutionService, times(2)).getLightPollution(batches.capture());
+        assertEquals(List.of(2, 1), batches.getAllValues().stream().map(Collection::size).toList());
+        assertTrue(service.isWarm());
+    }
+
+    private static LightPollutionBatchResponse answered(Collection<Coordinate> batch) {
+        return new LightPollutionBatchResponse(batch.stream().collect(Collectors.toMap(Function.identity(), point -> info(point))),
+                Set.of());
+    }
+
+    private static LightPollutionInfo info(Coordinate point) {
+        return new LightPollutionInfo(point.latitude(), point.longitude(), 10);
+    }
+
+    private CachePrefetchService service(double coverageThreshold) {
+        PrefetchConfig config = new PrefetchConfig(true,
+                List.of(new PrefetchConfig.Region("test", 50.0, 20.0, 10)),
+                1, 10_000, 2, coverageThreshold, Duration.ZERO);
+        return new CachePrefetchService(astroSpotService, lightPollutionService, config, 0.1, 0.1, 50.0, 2);
+    }
+}
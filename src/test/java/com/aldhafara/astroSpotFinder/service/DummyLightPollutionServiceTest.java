@@ -1,9 +1,11 @@
 package com.aldhafara.astroSpotFinder.service;
 
 import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.LightPollutionBatchResponse;
 import com.aldhafara.astroSpotFinder.model.LightPollutionInfo;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -28,4 +30,15 @@ public class DummyLightPollutionServiceTest {
         assertTrue(info.relativeBrightness() >= 0.0);
         assertTrue(info.relativeBrightness() < 255.0);
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldReturnLightPollutionForEveryCoordinateInBatch() {
+        List<Coordinate> coords = List.of(new Coordinate(15.0, 30.0), new Coordinate(16.0, 31.0));
+
+        LightPollutionBatchResponse result = dummyService.getLightPollution(coords);
+
+        assertEquals(2, result.lightPollution().size());
+        assertTrue(result.rateLimited().isEmpty());
+        assertEquals(16.0, result.lightPollution().get(new Coordinate(16.0, 31.0)).latitude());
+    }
+}
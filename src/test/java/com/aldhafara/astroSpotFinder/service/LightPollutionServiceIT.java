@@ -1,6 +1,7 @@
 package com.aldhafara.astroSpotFinder.service;
 
 import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.GridCell;
 import com.aldhafara.astroSpotFinder.model.LightPollutionInfo;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,7 +28,7 @@ class LightPollutionServiceIT {
     @Autowired
     private CacheManager cacheManager;
 
-    @MockitoBean
+    @MockitoBean(name = "lightPollutionRestTemplate")
     private RestTemplate restTemplate;
 
     @Test
@@ -54,7 +55,7 @@ class LightPollutionServiceIT {
 
         var cache = cacheManager.getCache("lightPollution");
         assertThat(cache).isNotNull();
-        var cachedValue = cache.get(coord, LightPollutionInfo.class);
+        var cachedValue = cache.get(GridCell.key(coord), LightPollutionInfo.class);
         assertThat(cachedValue).isNotNull();
         assertThat(cachedValue).isEqualTo(secondResult.get());
     }
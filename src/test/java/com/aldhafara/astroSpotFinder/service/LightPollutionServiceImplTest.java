@@ -1,21 +1,50 @@
 package com.aldhafara.astroSpotFinder.service;
 
+import com.aldhafara.astroSpotFinder.messaging.LightPollutionErrorEvent;
+import com.aldhafara.astroSpotFinder.messaging.LightPollutionErrorKafkaProducer;
 import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.GridCell;
+import com.aldhafara.astroSpotFinder.model.LightPollutionBatchResponse;
 import com.aldhafara.astroSpotFinder.model.LightPollutionInfo;
+import com.aldhafara.astroSpotFinder.upstream.BoundedIoExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-import org.mockito.InjectMocks;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class LightPollutionServiceImplTest {
@@ -23,13 +52,15 @@ public class LightPollutionServiceImplTest {
     @Mock
     private RestTemplate restTemplate;
 
-    @InjectMocks
     private LightPollutionServiceImpl service;
 
+    private SimpleMeterRegistry meterRegistry;
+
     @BeforeEach
     void setup() {
         MockitoAnnotations.openMocks(this);
-        service = new LightPollutionServiceImpl(restTemplate, "http://dummy-url");
+        meterRegistry = new SimpleMeterRegistry();
+        service = new LightPollutionServiceImpl(restTemplate, "http://dummy-url", true, 2, meterRegistry);
     }
 
     @Test
@@ -93,4 +124,194 @@ public class LightPollutionServiceImplTest {
 
         assertTrue(result.isEmpty());
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldSendCoordinatesInChunks_whenBulkEndpointIsAvailable() {
+        List<Coordinate> coords = List.of(new Coordinate(10, 20), new Coordinate(11, 21), new Coordinate(12, 22));
+        when(restTemplate.postForObject(any(URI.class), any(), eq(LightPollutionInfo[].class)))
+                .thenAnswer(invocation -> {
+                    List<Coordinate> chunk = invocation.getArgument(1);
+                    return chunk.stream()
+                            .map(c -> new LightPollutionInfo(c.latitude(), c.longitude(), c.latitude()))
+                            .toArray(LightPollutionInfo[]::new);
+                });
+
+        LightPollutionBatchResponse result = service.getLightPollution(coords);
+
+        assertEquals(3, result.lightPollution().size());
+        assertEquals(11, result.lightPollution().get(new Coordinate(11, 21)).relativeBrightness());
+        assertTrue(result.rateLimited().isEmpty());
+        verify(restTemplate, times(2)).postForObject(any(URI.class), any(), eq(LightPollutionInfo[].class));
+        verify(restTemplate, never()).getForObject(any(URI.class), eq(LightPollutionInfo.class));
+    }
+
+    @Test
+    void shouldRequestCoordinatesInSameGridCellOnlyOnce() {
+        Coordinate drifted = new Coordinate(0.6299999999999999, 20);
+        Coordinate canonical = new Coordinate(0.6300000000000003, 20);
+        when(restTemplate.postForObject(any(URI.class), any(), eq(LightPollutionInfo[].class)))
+                .thenReturn(new LightPollutionInfo[]{new LightPollutionInfo(0.63, 20, 42)});
+
+        LightPollutionBatchResponse result = service.getLightPollution(List.of(drifted, canonical));
+
+        assertEquals(1, result.lightPollution().size());
+        assertEquals(42, result.lightPollution().get(drifted).relativeBrightness());
+        verify(restTemplate, times(1)).postForObject(any(URI.class), eq(List.of(drifted)), eq(LightPollutionInfo[].class));
+    }
+
+    @Test
+    void shouldFallBackToPerPointRequests_whenBulkEndpointIsMissing() {
+        List<Coordinate> coords = List.of(new Coordinate(10, 20), new Coordinate(11, 21), new Coordinate(12, 22));
+        when(restTemplate.postForObject(any(URI.class), any(), eq(LightPollutionInfo[].class)))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null));
+        when(restTemplate.getForObject(any(URI.class), eq(LightPollutionInfo.class)))
+                .thenReturn(new LightPollutionInfo(10, 20, 100));
+
+        LightPollutionBatchResponse first = service.getLightPollution(coords);
+
+        assertEquals(3, first.lightPollution().size());
+        verify(restTemplate, times(3)).getForObject(any(URI.class), eq(LightPollutionInfo.class));
+
+        clearInvocations(restTemplate);
+        LightPollutionBatchResponse second = service.getLightPollution(coords);
+
+        assertEquals(3, second.lightPollution().size());
+        verify(restTemplate, never()).postForObject(any(URI.class), any(), eq(LightPollutionInfo[].class));
+        verify(restTemplate, times(3)).getForObject(any(URI.class), eq(LightPollutionInfo.class));
+    }
+
+    @Test
+    void shouldFallBackToPerPointRequests_whenOnlyOneUpstreamCallMayRunAtATime() {
+        List<Coordinate> coords = List.of(new Coordinate(10, 20), new Coordinate(11, 21), new Coordinate(12, 22));
+        when(restTemplate.postForObject(any(URI.class), any(), eq(LightPollutionInfo[].class)))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null));
+        when(restTemplate.getForObject(any(URI.class), eq(LightPollutionInfo.class)))
+                .thenReturn(new LightPollutionInfo(10, 20, 100));
+
+        try (BoundedIoExecutor ioExecutor = new BoundedIoExecutor(1, meterRegistry)) {
+            ReflectionTestUtils.setField(service, "ioExecutor", ioExecutor);
+
+            LightPollutionBatchResponse result = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> service.getLightPollution(coords));
+
+            assertEquals(3, result.lightPollution().size());
+            verify(restTemplate, times(3)).getForObject(any(URI.class), eq(LightPollutionInfo.class));
+        }
+    }
+
+    @Test
+    void shouldServeStoredBrightnessAndPersistNewResults(@TempDir Path tempDir) throws IOException {
+        Coordinate stored = new Coordinate(10, 20);
+        Coordinate fresh = new Coordinate(11, 21);
+        try (PersistentBrightnessStore store = new PersistentBrightnessStore(tempDir.resolve("brightness.store"))) {
+            store.put(GridCell.key(stored), 42f);
+            ReflectionTestUtils.setField(service, "brightnessStore", store);
+            when(restTemplate.postForObject(any(URI.class), any(), eq(LightPollutionInfo[].class)))
+                    .thenReturn(new LightPollutionInfo[]{new LightPollutionInfo(11, 21, 7)});
+
+            LightPollutionBatchResponse result = service.getLightPollution(List.of(stored, fresh));
+
+            assertEquals(42, result.lightPollution().get(stored).relativeBrightness());
+            assertEquals(7, result.lightPollution().get(fresh).relativeBrightness());
+            assertEquals(7f, store.get(GridCell.key(fresh)));
+            verify(restTemplate, times(1)).postForObject(any(URI.class), eq(List.of(fresh)), eq(LightPollutionInfo[].class));
+            assertEquals(1, meterRegistry.get("lightpollution.lookups.store").counter().count());
+        }
+    }
+
+    @Test
+    void shouldReportRateLimitedCoordinates_whenBulkEndpointReturns429() {
+        List<Coordinate> coords = List.of(new Coordinate(10, 20), new Coordinate(11, 21));
+        when(restTemplate.postForObject(any(URI.class), any(), eq(LightPollutionInfo[].class)))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", null, null, null));
+
+        LightPollutionBatchResponse result = service.getLightPollution(coords);
+
+        assertTrue(result.lightPollution().isEmpty());
+        assertEquals(Set.copyOf(coords), result.rateLimited());
+    }
+
+    @Test
+    void shouldReportNoDataOnlyForAnsweredCoordinates() {
+        Coordinate answered = new Coordinate(10, 20);
+        Coordinate invalid = new Coordinate(11, 21);
+        Coordinate failed = new Coordinate(12, 22);
+        when(restTemplate.postForObject(any(URI.class), any(), eq(LightPollutionInfo[].class)))
+                .thenReturn(new LightPollutionInfo[]{new LightPollutionInfo(10, 20, 5), new LightPollutionInfo(11, 21, -1)})
+                .thenThrow(HttpClientErrorException.create(HttpStatus.INTERNAL_SERVER_ERROR, "Server Error", null, null, null));
+
+        LightPollutionBatchResponse result = service.getLightPollution(List.of(answered, invalid, failed));
+
+        assertEquals(Set.of(answered), result.lightPollution().keySet());
+        assertEquals(Set.of(invalid), result.noData());
+        assertTrue(result.rateLimited().isEmpty());
+    }
+
+    @Test
+    void shouldNotReportFailedPerPointRequestsAsNoData() {
+        service = new LightPollutionServiceImpl(restTemplate, "http://dummy-url", false, 2, meterRegistry);
+        when(restTemplate.getForObject(any(URI.class), eq(LightPollutionInfo.class)))
+                .thenReturn(null)
+                .thenThrow(new RestClientException("Service error"));
+
+        LightPollutionBatchResponse result = service.getLightPollution(List.of(new Coordinate(10, 20), new Coordinate(11, 21)));
+
+        assertTrue(result.lightPollution().isEmpty());
+        assertEquals(Set.of(new Coordinate(10, 20)), result.noData());
+    }
+
+    @Test
+    void shouldPublishOneRateLimitEventPerRejectedBatch() {
+        LightPollutionErrorKafkaProducer kafkaProducer = mock(LightPollutionErrorKafkaProducer.class);
+        ReflectionTestUtils.setField(service, "kafkaProducer", kafkaProducer);
+        List<Coordinate> coords = List.of(new Coordinate(10, 20), new Coordinate(11, 21), new Coordinate(12, 22));
+        when(restTemplate.postForObject(any(URI.class), any(), eq(LightPollutionInfo[].class)))
+                .thenThrow(HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", null, null, null));
+
+        service.getLightPollution(coords);
+
+        ArgumentCaptor<LightPollutionErrorEvent> events = ArgumentCaptor.forClass(LightPollutionErrorEvent.class);
+        verify(kafkaProducer, times(2)).sendEvent(events.capture());
+        assertEquals(List.of(2, 1), events.getAllValues().stream()
+                .map(event -> event.coordinates().size())
+                .sorted(Comparator.reverseOrder())
+                .toList());
+        assertEquals(Set.copyOf(coords), events.getAllValues().stream()
+                .flatMap(event -> event.coordinates().stream())
+                .collect(Collectors.toSet()));
+        assertTrue(events.getAllValues().stream().allMatch(event -> event.coordinate().equals(event.coordinates().getFirst())));
+        assertTrue(events.getAllValues().stream().allMatch(event -> event.httpStatusCode() == 429));
+    }
+
+    @Test
+    void shouldShareOneUpstreamCall_whenIdenticalLookupsAreConcurrent() throws Exception {
+        Coordinate coord = new Coordinate(10, 20);
+        LightPollutionInfo validResponse = new LightPollutionInfo(10, 20, 100);
+        CountDownLatch upstreamCalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(restTemplate.getForObject(any(URI.class), eq(LightPollutionInfo.class))).thenAnswer(invocation -> {
+            upstreamCalled.countDown();
+            release.await();
+            return validResponse;
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Optional<LightPollutionInfo>> leader = executor.submit(() -> service.getLightPollution(coord));
+            upstreamCalled.await();
+            Future<Optional<LightPollutionInfo>> follower = executor.submit(() -> service.getLightPollution(coord));
+            while (meterRegistry.counter("lightpollution.lookups.coalesced").count() < 1) {
+                Thread.onSpinWait();
+            }
+            release.countDown();
+
+            assertEquals(Optional.of(validResponse), leader.get(5, TimeUnit.SECONDS));
+            assertEquals(Optional.of(validResponse), follower.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        verify(restTemplate, times(1)).getForObject(any(URI.class), eq(LightPollutionInfo.class));
+        assertEquals(1.0, meterRegistry.counter("lightpollution.lookups.upstream").count());
+    }
+}
@@ -0,0 +1,87 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import com.aldhafara.astroSpotFinder.model.Coordinate;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalProjectionDistanceServiceTest {
+
+    private static final double RADIUS_KM = 150;
+    private static final double KM_PER_DEGREE = 111.195;
+
+    private final StraightLineDistanceService haversine = new StraightLineDistanceService();
+
+    @Test
+    void shouldMatchHaversineWithinDocumentedErrorUpTo150Km() {
+        Random random = new Random(42);
+        for (double originLatitude : new double[]{0, 30, 50, 60, 70, -45}) {
+            Coordinate origin = new Coordinate(originLatitude, 20);
+            LocalProjectionDistanceService projection = new LocalProjectionDistanceService(origin);
+            for (int i = 0; i < 10_000; i++) {
+                Coordinate pointA = randomPointAround(origin, random);
+                Coordinate pointB = randomPointAround(origin, random);
+                double expected = haversine.findDistance(pointA, pointB);
+
+                assertEquals(expected, projection.findDistance(pointA, pointB), expected * 1e-4 + 1e-9,
+                        () -> pointA + " - " + pointB);
+            }
+        }
+    }
+
+    @Test
+    void shouldKeepDistanceFromOriginExact() {
+        Coordinate origin = new Coordinate(65, 25);
+        Coordinate point = new Coordinate(66.2, 27.5);
+        LocalProjectionDistanceService projection = new LocalProjectionDistanceService(origin);
+
+        assertEquals(haversine.findDistance(origin, point), projection.findDistance(origin, point), 1e-9);
+        assertEquals(0.0, projection.findDistance(point, point));
+    }
+
+    @Test
+    void shouldComputeBatchLikeSingleDistances() {
+        Random random = new Random(7);
+        Coordinate origin = new Coordinate(50, 20);
+        LocalProjectionDistanceService projection = new LocalProjectionDistanceService(origin);
+        Coordinate from = randomPointAround(origin, random);
+        double[] latitudes = new double[100];
+        double[] longitudes = new double[100];
+        for (int i = 0; i < latitudes.length; i++) {
+            Coordinate point = randomPointAround(origin, random);
+            latitudes[i] = point.latitude();
+            longitudes[i] = point.longitude();
+        }
+        double[] out = new double[latitudes.length];
+
+        projection.distancesFrom(from, latitudes, longitudes, latitudes.length, out);
+
+        for (int i = 0; i < latitudes.length; i++) {
+            assertEquals(projection.findDistance(from, new Coordinate(latitudes[i], longitudes[i])), out[i]);
+        }
+    }
+
+    @Test
+    void shouldCheckEpsNeighbourhoodOnProjectedPoints() {
+        LocalProjectionDistanceService projection = new LocalProjectionDistanceService(new Coordinate(50, 20));
+        double[] pointA = projection.project(new Coordinate(50.5, 20.5));
+        double[] pointB = projection.project(new Coordinate(50.55, 20.5));
+
+        assertEquals(5.56, LocalProjectionDistanceService.distance(pointA, pointB), 0.01);
+        assertTrue(LocalProjectionDistanceService.isWithin(pointA, pointB, 5.6));
+        assertFalse(LocalProjectionDistanceService.isWithin(pointA, pointB, 5.5));
+    }
+
+    private static Coordinate randomPointAround(Coordinate origin, Random random) {
+        double angle = random.nextDouble() * 2 * Math.PI;
+        double distance = RADIUS_KM * Math.sqrt(random.nextDouble()) * 0.99;
+        double latitude = origin.latitude() + distance * Math.cos(angle) / KM_PER_DEGREE;
+        double longitude = origin.longitude()
+                + distance * Math.sin(angle) / (KM_PER_DEGREE * Math.cos(Math.toRadians(latitude)));
+        return new Coordinate(latitude, longitude);
+    }
+}
@@ -0,0 +1,126 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistentBrightnessStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldRestoreValuesAfterRestart() throws IOException {
+        Path file = tempDir.resolve("brightness.store");
+        try (PersistentBrightnessStore store = new PersistentBrightnessStore(file)) {
+            store.put(1L, 10.5f);
+            store.put(2L, 20f);
+            store.put(1L, 11f);
+            assertEquals(11f, store.get(1L));
+        }
+
+        try (PersistentBrightnessStore restarted = new PersistentBrightnessStore(file)) {
+            assertEquals(2, restarted.size());
+            assertEquals(11f, restarted.get(1L));
+            assertEquals(20f, restarted.get(2L));
+            assertTrue(Float.isNaN(restarted.get(3L)));
+        }
+    }
+
+    @Test
+    void shouldNotAppendUnchangedValues() throws IOException {
+        Path file = tempDir.resolve("brightness.store");
+        try (PersistentBrightnessStore store = new PersistentBrightnessStore(file)) {
+            store.put(1L, 10f);
+            store.put(1L, 10f);
+        }
+
+        assertEquals(PersistentBrightnessStore.HEADER_BYTES + PersistentBrightnessStore.RECORD_BYTES, Files.size(file));
+    }
+
+    @Test
+    void shouldKeepMostRecentlyWrittenCells_whenLogIsCompacted() throws IOException {
+        Path file = tempDir.resolve("brightness.store");
+        try (PersistentBrightnessStore store = new PersistentBrightnessStore(file, 3)) {
+            for (long cell = 1; cell <= 5; cell++) {
+                store.put(cell, cell * 10f);
+            }
+            store.put(2L, 21f);
+        }
+
+        assertEquals(PersistentBrightnessStore.HEADER_BYTES + 3 * PersistentBrightnessStore.RECORD_BYTES, Files.size(file));
+        try (PersistentBrightnessStore restarted = new PersistentBrightnessStore(file, 3)) {
+            assertEquals(3, restarted.size());
+            assertEquals(40f, restarted.get(4L));
+            assertEquals(50f, restarted.get(5L));
+            assertEquals(21f, restarted.get(2L));
+            assertTrue(Float.isNaN(restarted.get(1L)));
+            assertTrue(Float.isNaN(restarted.get(3L)));
+        }
+    }
+
+    @Test
+    void shouldBoundLogOfRepeatedlyUpdatedCell() throws IOException {
+        Path file = tempDir.resolve("brightness.store");
+        try (PersistentBrightnessStore store = new PersistentBrightnessStore(file, 2)) {
+            for (int value = 1; value <= 100; value++) {
+                store.put(1L, value);
+            }
+            assertEquals(100f, store.get(1L));
+        }
+
+        assertTrue(Files.size(file) < PersistentBrightnessStore.HEADER_BYTES + 4 * PersistentBrightnessStore.RECORD_BYTES);
+        try (PersistentBrightnessStore restarted = new PersistentBrightnessStore(file, 2)) {
+            assertEquals(1, restarted.size());
+            assertEquals(100f, restarted.get(1L));
+        }
+    }
+
+    @Test
+    void shouldDropTruncatedLastRecord() throws IOException {
+        Path file = tempDir.resolve("brightness.store");
+        try (PersistentBrightnessStore store = new PersistentBrightnessStore(file)) {
+            store.put(7L, 70f);
+        }
+        Files.write(file, new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (PersistentBrightnessStore restarted = new PersistentBrightnessStore(file)) {
+            assertEquals(70f, restarted.get(7L));
+            restarted.put(8L, 80f);
+        }
+        try (PersistentBrightnessStore restarted = new PersistentBrightnessStore(file)) {
+            assertEquals(2, restarted.size());
+            assertEquals(80f, restarted.get(8L));
+        }
+    }
+
+    @Test
+    void shouldRejectMaxEntriesWhoseCompactionWouldNotFitInOneBuffer() {
+        Path file = tempDir.resolve("too-large.bin");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new PersistentBrightnessStore(file, PersistentBrightnessStore.MAX_ENTRIES_LIMIT + 1));
+        assertTrue(Files.notExists(file));
+    }
+
+    @Test
+    void shouldStartEmpty_whenFileIsNotABrightnessStore() throws IOException {
+        Path file = tempDir.resolve("other.bin");
+        Files.write(file, new byte[64]);
+
+        try (PersistentBrightnessStore store = new PersistentBrightnessStore(file)) {
+            assertEquals(0, store.size());
+            store.put(1L, 1f);
+            assertEquals(1f, store.get(1L));
+        }
+        assertEquals(64, Files.size(file));
+    }
+}
@@ -0,0 +1,157 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.LocationConditions;
+import com.aldhafara.astroSpotFinder.model.LocationsCluster;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProximityClusteringTest {
+
+    private final StraightLineDistanceService distanceService = new StraightLineDistanceService();
+
+    @Test
+    void shouldMatchPairwiseClustering() {
+        Random random = new Random(11);
+        for (double eps : new double[]{0.5, 3.0, 12.0, 40.0}) {
+            for (double latitude : new double[]{0, 50, 68}) {
+                List<LocationConditions> points = randomPoints(random, new Coordinate(latitude, 20), 300);
+
+                List<LocationsCluster> expected = pairwise(points, eps, distanceService);
+                List<LocationsCluster> actual = ProximityClustering.cluster(points, null, eps, distanceService);
+
+                assertEquals(asSets(expected), asSets(actual), "eps=" + eps + " latitude=" + latitude);
+            }
+        }
+    }
+
+    @Test
+    void shouldMatchPairwiseClustering_withLocalProjection() {
+        Random random = new Random(13);
+        for (double eps : new double[]{0.5, 3.0, 12.0, 40.0}) {
+            for (double latitude : new double[]{0, 50, 68}) {
+                Coordinate origin = new Coordinate(latitude, 20);
+                LocalProjectionDistanceService projection = new LocalProjectionDistanceService(origin);
+                List<LocationConditions> points = randomPoints(random, origin, 300);
+
+                List<LocationsCluster> expected = pairwise(points, eps, projection);
+                List<LocationsCluster> actual = ProximityClustering.cluster(points, null, eps, projection);
+
+                assertEquals(asSets(expected), asSets(actual), "eps=" + eps + " latitude=" + latitude);
+            }
+        }
+    }
+
+    @Test
+    void shouldKeepInitialGroupsTogether() {
+        LocationConditions a = location(50.0, 20.0, 1);
+        LocationConditions b = location(51.0, 21.0, 2);
+        LocationConditions c = location(51.01, 21.0, 3);
+
+        List<LocationsCluster> clusters = ProximityClustering.cluster(List.of(a, b, c), new int[]{0, 0, 1}, 5.0, distanceService);
+
+        assertEquals(1, clusters.size());
+        assertEquals(Set.of(a, b, c), clusters.get(0).getLocations());
+    }
+
+    @Test
+    void shouldMergeClustersLikeGroupedClustering() {
+        Random random = new Random(5);
+        List<LocationConditions> points = new ArrayList<>();
+        List<LocationsCluster> clusters = new ArrayList<>();
+        List<Integer> groups = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            LocationsCluster cluster = new LocationsCluster();
+            int size = 1 + random.nextInt(4);
+            for (int j = 0; j < size; j++) {
+                LocationConditions point = location(50 + (random.nextDouble() - 0.5) * 2, 20 + (random.nextDouble() - 0.5) * 3,
+                        random.nextInt(3));
+                cluster.add(point);
+                points.add(point);
+                groups.add(i);
+            }
+            clusters.add(cluster);
+        }
+        clusters.add(new LocationsCluster());
+
+        List<LocationsCluster> expected = ProximityClustering.cluster(points, groups.stream().mapToInt(Integer::intValue).toArray(),
+                8.0, distanceService);
+        List<LocationsCluster> merged = ProximityClustering.merge(clusters, 8.0, distanceService);
+
+        assertEquals(asSets(expected), asSets(merged));
+        assertEquals(points.size(), merged.stream().mapToInt(LocationsCluster::size).sum());
+    }
+
+    @Test
+    void shouldReturnNoClustersForNoPoints() {
+        assertTrue(ProximityClustering.cluster(List.of(), null, 5.0, distanceService).isEmpty());
+    }
+
+    /**
+     * The clustering used before the spatial hash: join the first cluster with a point within eps, then merge
+     * clusters pairwise until no two are within eps.
+     */
+    private static List<LocationsCluster> pairwise(List<LocationConditions> points, double eps, DistanceService distanceService) {
+        List<LocationsCluster> clusters = new ArrayList<>();
+        for (LocationConditions point : points) {
+            LocationsCluster clusterToJoin = clusters.stream()
+                    .filter(cluster -> cluster.getLocations().stream()
+                            .anyMatch(loc -> distanceService.findDistance(loc.coordinate(), point.coordinate()) <= eps))
+                    .findFirst()
+                    .orElse(null);
+            if (clusterToJoin != null) {
+                clusterToJoin.add(point);
+            } else {
+                clusters.add(new LocationsCluster(Set.of(point)));
+            }
+        }
+        boolean merged;
+        do {
+            merged = false;
+            outerLoop:
+            for (int i = 0; i < clusters.size(); i++) {
+                for (int j = i + 1; j < clusters.size(); j++) {
+                    if (close(clusters.get(i), clusters.get(j), eps, distanceService)) {
+                        clusters.get(j).getLocations().forEach(clusters.get(i)::add);
+                        clusters.remove(j);
+                        merged = true;
+                        break outerLoop;
+                    }
+                }
+            }
+        } while (merged);
+        return clusters;
+    }
+
+    private static boolean close(LocationsCluster a, LocationsCluster b, double eps, DistanceService distanceService) {
+        return a.getLocations().stream().anyMatch(locA -> b.getLocations().stream()
+                .anyMatch(locB -> distanceService.findDistance(locA.coordinate(), locB.coordinate()) <= eps));
+    }
+
+    private static Set<Set<LocationConditions>> asSets(List<LocationsCluster> clusters) {
+        return clusters.stream().map(cluster -> new HashSet<>(cluster.getLocations())).collect(Collectors.toSet());
+    }
+
+    private static List<LocationConditions> randomPoints(Random random, Coordinate center, int count) {
+        List<LocationConditions> points = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            double latitude = center.latitude() + (random.nextDouble() - 0.5) * 2.5;
+            double longitude = center.longitude() + (random.nextDouble() - 0.5) * 3.5;
+            points.add(location(latitude, longitude, i));
+        }
+        return points;
+    }
+
+    private static LocationConditions location(double latitude, double longitude, double brightness) {
+        return new LocationConditions(new Coordinate(latitude, longitude), brightness, null, null);
+    }
+}
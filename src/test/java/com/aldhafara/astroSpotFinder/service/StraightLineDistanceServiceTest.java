@@ -8,6 +8,7 @@ import jakarta.validation.ValidatorFactory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Random;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -74,4 +75,26 @@ class StraightLineDistanceServiceTest {
 
         assertEquals(20015, distance, 10.0, "Distance between antipodal points should be about 20015 km");
     }
+
+    @Test
+    void distancesFromShouldMatchFindDistanceForEveryPoint() {
+        Coordinate origin = new Coordinate(50.0, 20.0);
+        Random random = new Random(7);
+        int count = 1001;
+        double[] latitudes = new double[count + 5];
+        double[] longitudes = new double[count + 5];
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = -90 + random.nextDouble() * 180;
+            longitudes[i] = -180 + random.nextDouble() * 360;
+        }
+        double[] out = new double[count + 5];
+
+        distanceService.distancesFrom(origin, latitudes, longitudes, count, out);
+
+        for (int i = 0; i < count; i++) {
+            double expected = distanceService.findDistance(origin, new Coordinate(latitudes[i], longitudes[i]));
+            assertEquals(expected, out[i], 1e-6, "Batch distance should match findDistance at index " + i);
+        }
+        assertEquals(0.0, out[count], "Points past count should be left untouched");
+    }
 }
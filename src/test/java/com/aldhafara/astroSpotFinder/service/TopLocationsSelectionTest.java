@@ -0,0 +1,66 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import com.aldhafara.astroSpotFinder.model.Coordinate;
+import com.aldhafara.astroSpotFinder.model.LocationConditions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TopLocationsSelectionTest {
+
+    @Test
+    void shouldMatchFullSortWithAndWithoutTies() {
+        Random random = new Random(5);
+        for (int round = 0; round < 200; round++) {
+            List<LocationConditions> locations = new ArrayList<>();
+            int size = 1 + random.nextInt(300);
+            for (int i = 0; i < size; i++) {
+                locations.add(location(i, random.nextInt(20) / 10.0));
+            }
+            int k = 1 + random.nextInt(size + 5);
+
+            assertEquals(sorted(locations, k, false), TopLocationsSelection.select(locations, k, false));
+            assertEquals(sorted(locations, k, true), TopLocationsSelection.select(locations, k, true));
+        }
+    }
+
+    @Test
+    void shouldIncludeEveryTieOfTheLastSelectedLocation() {
+        List<LocationConditions> locations = List.of(location(0, 0.3), location(1, 0.1), location(2, 0.2),
+                location(3, 0.2), location(4, 0.2));
+
+        assertEquals(List.of(locations.get(1), locations.get(2)), TopLocationsSelection.select(locations, 2, false));
+        assertEquals(List.of(locations.get(1), locations.get(2), locations.get(3), locations.get(4)),
+                TopLocationsSelection.select(locations, 2, true));
+    }
+
+    @Test
+    void shouldReturnNothingForNoLocations() {
+        assertTrue(TopLocationsSelection.select(List.of(), 3, true).isEmpty());
+    }
+
+    /**
+     * The selection used before: a stable sort of everything, cut after {@code k} or after the last tie.
+     */
+    private static List<LocationConditions> sorted(List<LocationConditions> locations, int k, boolean withTies) {
+        List<LocationConditions> sorted = locations.stream()
+                .sorted(Comparator.comparingDouble(LocationConditions::brightness))
+                .toList();
+        int size = Math.min(k, sorted.size());
+        if (!withTies) {
+            return sorted.subList(0, size);
+        }
+        double threshold = sorted.get(size - 1).brightness();
+        return sorted.stream().takeWhile(location -> location.brightness() <= threshold).toList();
+    }
+
+    private static LocationConditions location(int index, double brightness) {
+        return new LocationConditions(new Coordinate(index, index), brightness, null, null);
+    }
+}
@@ -0,0 +1,171 @@
+package com.aldhafara.astroSpotFinder.upstream;
+
+import com.aldhafara.astroSpotFinder.configuration.AdaptiveLimiterConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void shouldCutLimitMultiplicatively_on429() {
+        AdaptiveConcurrencyLimiter limiter = limiter(8, 1_000.0);
+
+        assertThrows(HttpClientErrorException.TooManyRequests.class, () -> limiter.call(() -> {
+            throw HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", null, null, null);
+        }));
+
+        assertEquals(4, limiter.limit());
+        assertEquals(0, limiter.inFlight());
+        assertEquals(1, meterRegistry.get("upstream.limiter.throttled").tag("upstream", "test").counter().count());
+    }
+
+    @Test
+    void shouldGrowLimitAdditively_whileLimitIsInUse() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1_000.0);
+
+        for (int i = 0; i < 10; i++) {
+            limiter.call(() -> "ok");
+        }
+
+        assertTrue(limiter.limit() > 1);
+        assertTrue(limiter.limit() <= 10);
+        assertEquals(limiter.limit(), meterRegistry.get("upstream.limiter.limit").gauge().value());
+    }
+
+    @Test
+    void shouldQueueCallers_whenLimitIsReached() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1_000.0);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> limiter.call(() -> {
+                started.countDown();
+                await(release);
+                return "first";
+            }));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            Future<String> second = executor.submit(() -> limiter.call(() -> "second"));
+
+            while (limiter.queued() == 0) {
+                Thread.onSpinWait();
+            }
+            assertFalse(second.isDone());
+            assertEquals(1, meterRegistry.get("upstream.limiter.queued").gauge().value());
+
+            release.countDown();
+            assertEquals("first", first.get(5, TimeUnit.SECONDS));
+            assertEquals("second", second.get(5, TimeUnit.SECONDS));
+            assertEquals(0, limiter.queued());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldCutLimit_whenLatencySpikePersists() {
+        AdaptiveConcurrencyLimiter limiter = limiter(8, 2.0);
+        for (int i = 0; i < 10; i++) {
+            limiter.call(() -> "fast");
+        }
+
+        for (int i = 0; i < 4; i++) {
+            limiter.call(() -> {
+                sleep(50);
+                return "slow";
+            });
+        }
+        assertEquals(8, limiter.limit());
+
+        limiter.call(() -> {
+            sleep(50);
+            return "slow";
+        });
+        assertEquals(4, limiter.limit());
+    }
+
+    @Test
+    void shouldNotCutLimit_afterSingleFastOutlier() {
+        AdaptiveConcurrencyLimiter limiter = limiter(8, 2.0);
+
+        limiter.call(() -> "outlier");
+        for (int i = 0; i < 20; i++) {
+            limiter.call(() -> {
+                sleep(10);
+                return "normal";
+            });
+        }
+
+        assertEquals(8, limiter.limit());
+    }
+
+    @Test
+    void shouldCutLimit_whenUpstreamTimesOut() {
+        AdaptiveConcurrencyLimiter limiter = limiter(8, 2.0);
+
+        assertThrows(ResourceAccessException.class, () -> limiter.call(() -> {
+            throw new ResourceAccessException("Read timed out");
+        }));
+
+        assertEquals(4, limiter.limit());
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void shouldJudgeLatencyAgainstBaselineOfSameRequestType() {
+        AdaptiveConcurrencyLimiter limiter = limiter(8, 2.0);
+
+        for (int i = 0; i < 20; i++) {
+            limiter.call("single", () -> "fast");
+            limiter.call("batch", () -> {
+                sleep(50);
+                return "slow";
+            });
+        }
+
+        assertEquals(8, limiter.limit());
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit, double latencyTolerance) {
+        return new AdaptiveConcurrencyLimiter("test",
+                new AdaptiveLimiterConfig.Settings(true, initialLimit, 1, 64, 0.5, latencyTolerance), meterRegistry);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
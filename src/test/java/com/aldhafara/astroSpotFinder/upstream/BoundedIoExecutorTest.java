@@ -0,0 +1,76 @@
+package com.aldhafara.astroSpotFinder.upstream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClientException;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedIoExecutorTest {
+
+    private BoundedIoExecutor executor;
+
+    @BeforeEach
+    void setup() {
+        executor = new BoundedIoExecutor(4, new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    void shouldRunAllTasksOnVirtualThreadsWithinBound() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Set<Integer> done = ConcurrentHashMap.newKeySet();
+
+        executor.forEach(IntStream.range(0, 40).boxed().toList(), item -> {
+            assertTrue(Thread.currentThread().isVirtual());
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            sleep(10);
+            running.decrementAndGet();
+            done.add(item);
+        });
+
+        assertEquals(40, done.size());
+        assertTrue(maxRunning.get() <= 4);
+        assertTrue(maxRunning.get() > 1);
+        assertEquals(0, executor.active());
+    }
+
+    @Test
+    void shouldRethrowFailure_afterAllTasksFinished() {
+        AtomicInteger finished = new AtomicInteger();
+
+        assertThrows(RestClientException.class, () -> executor.forEach(List.of(1, 2, 3), item -> {
+            if (item == 2) {
+                throw new RestClientException("upstream down");
+            }
+            sleep(20);
+            finished.incrementAndGet();
+        }));
+
+        assertEquals(2, finished.get());
+        assertEquals(0, executor.active());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.aldhafara.astroSpotFinder.upstream;
+
+import com.aldhafara.astroSpotFinder.configuration.HedgingConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClientException;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgedRequestsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    void shouldNotHedge_untilLatencySamplesAreCollected() {
+        HedgedRequests hedging = hedging(1.0);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("slow", hedging.call(() -> {
+            calls.incrementAndGet();
+            sleep(20);
+            return "slow";
+        }));
+
+        assertEquals(1, calls.get());
+        assertTrue(Double.isNaN(hedging.delayMillis()));
+    }
+
+    @Test
+    void shouldUseHedgedAnswer_whenFirstCallIsStraggler() {
+        HedgedRequests hedging = primed(1.0);
+        AtomicInteger calls = new AtomicInteger();
+
+        String result = hedging.call(() -> {
+            if (calls.incrementAndGet() == 1) {
+                sleep(2_000);
+                return "straggler";
+            }
+            return "hedge";
+        });
+
+        assertEquals("hedge", result);
+        assertEquals(2, calls.get());
+        assertEquals(1, counter("upstream.hedge.fired"));
+        assertEquals(1, counter("upstream.hedge.won"));
+    }
+
+    @Test
+    void shouldInterruptLosingAttempt_whenHedgeWins() throws InterruptedException {
+        HedgedRequests hedging = primed(1.0);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        String result = hedging.call(() -> {
+            if (calls.incrementAndGet() == 1) {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return "straggler";
+            }
+            return "hedge";
+        });
+
+        assertEquals("hedge", result);
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shouldKeepSeparateLatencyWindowPerRequestType() {
+        HedgedRequests hedging = primed(1.0);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("slow", hedging.call("batch", () -> {
+            calls.incrementAndGet();
+            sleep(50);
+            return "slow";
+        }));
+
+        assertEquals(1, calls.get());
+        assertTrue(Double.isNaN(hedging.delayMillis("batch")));
+        assertEquals(0, counter("upstream.hedge.fired"));
+    }
+
+    @Test
+    void shouldNotHedge_whenExtraLoadBudgetIsSpent() {
+        HedgedRequests hedging = primed(0.0);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("slow", hedging.call(() -> {
+            calls.incrementAndGet();
+            sleep(50);
+            return "slow";
+        }));
+
+        assertEquals(1, calls.get());
+        assertEquals(0, counter("upstream.hedge.fired"));
+    }
+
+    @Test
+    void shouldRethrow_whenAllAttemptsFail() {
+        HedgedRequests hedging = primed(1.0);
+
+        RestClientException e = assertThrows(RestClientException.class, () -> hedging.call(() -> {
+            sleep(20);
+            throw new RestClientException("upstream down");
+        }));
+
+        assertEquals("upstream down", e.getMessage());
+    }
+
+    @Test
+    void shouldTrackRecentLatencies_afterWindowWrapsAround() {
+        HedgedRequests hedging = hedging(1.0);
+        for (int i = 0; i < 250; i++) {
+            hedging.call(() -> "fast");
+        }
+        assertEquals(5.0, hedging.delayMillis());
+
+        for (int i = 0; i < 100; i++) {
+            hedging.call(() -> {
+                sleep(10);
+                return "slow";
+            });
+        }
+
+        assertTrue(hedging.delayMillis() >= 10.0);
+    }
+
+    private HedgedRequests primed(double maxExtraLoad) {
+        HedgedRequests hedging = hedging(maxExtraLoad);
+        for (int i = 0; i < 100; i++) {
+            hedging.call(() -> "fast");
+        }
+        assertTrue(hedging.delayMillis() >= 5.0);
+        return hedging;
+    }
+
+    private HedgedRequests hedging(double maxExtraLoad) {
+        return new HedgedRequests("test",
+                new HedgingConfig.Settings(true, 0.95, Duration.ofMillis(5), maxExtraLoad, 100), meterRegistry);
+    }
+
+    private double counter(String name) {
+        return meterRegistry.get(name).tag("upstream", "test").counter().count();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
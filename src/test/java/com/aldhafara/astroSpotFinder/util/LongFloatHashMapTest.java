@@ -0,0 +1,31 @@
+package com.aldhafara.astroSpotFinder.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongFloatHashMapTest {
+
+    @Test
+    void shouldStoreAndReplaceValues() {
+        LongFloatHashMap map = new LongFloatHashMap(2);
+
+        for (long key = 0; key < 1000; key++) {
+            assertTrue(Float.isNaN(map.put(key << 32, key)));
+        }
+        assertEquals(999f, map.put(999L << 32, -1f));
+
+        assertEquals(1000, map.size());
+        assertEquals(0f, map.get(0));
+        assertEquals(500f, map.get(500L << 32));
+        assertEquals(-1f, map.get(999L << 32));
+        assertTrue(Float.isNaN(map.get(1)));
+    }
+
+    @Test
+    void shouldRejectNaN() {
+        assertThrows(IllegalArgumentException.class, () -> new LongFloatHashMap().put(1, Float.NaN));
+    }
+}
@@ -0,0 +1,41 @@
+package com.aldhafara.astroSpotFinder.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongHashSetTest {
+
+    @Test
+    void shouldAddEachKeyOnceAndGrow() {
+        LongHashSet set = new LongHashSet(2);
+
+        for (long key = -500; key < 500; key++) {
+            assertTrue(set.add(key * 31));
+        }
+        for (long key = -500; key < 500; key++) {
+            assertFalse(set.add(key * 31));
+            assertTrue(set.contains(key * 31));
+        }
+
+        assertEquals(1000, set.size());
+        assertFalse(set.contains(1));
+    }
+
+    @Test
+    void shouldHandleZeroKeyAndClear() {
+        LongHashSet set = new LongHashSet();
+
+        assertFalse(set.contains(0));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.contains(0));
+
+        set.clear();
+
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(0));
+    }
+}
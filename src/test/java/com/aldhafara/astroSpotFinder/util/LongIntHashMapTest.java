@@ -0,0 +1,30 @@
+package com.aldhafara.astroSpotFinder.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LongIntHashMapTest {
+
+    @Test
+    void shouldStoreAndReplaceValues() {
+        LongIntHashMap map = new LongIntHashMap(2);
+
+        for (int key = 0; key < 1000; key++) {
+            assertEquals(LongIntHashMap.MISSING, map.put((long) key << 32, key));
+        }
+        assertEquals(999, map.put(999L << 32, 7));
+
+        assertEquals(1000, map.size());
+        assertEquals(0, map.get(0));
+        assertEquals(500, map.get(500L << 32));
+        assertEquals(7, map.get(999L << 32));
+        assertEquals(LongIntHashMap.MISSING, map.get(1));
+    }
+
+    @Test
+    void shouldRejectNegativeValues() {
+        assertThrows(IllegalArgumentException.class, () -> new LongIntHashMap().put(1, -1));
+    }
+}
@@ -0,0 +1,45 @@
+package com.aldhafara.astroSpotFinder.service;
+
+import com.aldhafara.astroSpotFinder.model.Coordinate;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Haversine distances from one point to many, computed in as many SIMD lanes as the CPU offers. Compiled only with the
+ * {@code vector} Maven profile and loaded by {@link StraightLineDistanceService} only when the JVM runs with
+ * {@code --add-modules jdk.incubator.vector}; the points left over after the last full vector go through the scalar
+ * formula.
+ */
+final class VectorizedHaversine implements StraightLineDistanceService.DistanceBatch {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final double RADIANS_PER_DEGREE = Math.PI / 180;
+
+    VectorizedHaversine() {
+    }
+
+    @Override
+    public void distancesFrom(Coordinate origin, double[] latitudes, double[] longitudes, int count, double[] out) {
+        double latA = Math.toRadians(origin.latitude());
+        double lonA = Math.toRadians(origin.longitude());
+        double cosLatA = Math.cos(latA);
+
+        int upperBound = SPECIES.loopBound(count);
+        int i = 0;
+        for (; i < upperBound; i += SPECIES.length()) {
+            DoubleVector latB = DoubleVector.fromArray(SPECIES, latitudes, i).mul(RADIANS_PER_DEGREE);
+            DoubleVector lonB = DoubleVector.fromArray(SPECIES, longitudes, i).mul(RADIANS_PER_DEGREE);
+            DoubleVector sinHalfDLat = latB.sub(latA).mul(0.5).lanewise(VectorOperators.SIN);
+            DoubleVector sinHalfDLon = lonB.sub(lonA).mul(0.5).lanewise(VectorOperators.SIN);
+            DoubleVector haversine = sinHalfDLat.mul(sinHalfDLat)
+                    .add(latB.lanewise(VectorOperators.COS).mul(cosLatA).mul(sinHalfDLon.mul(sinHalfDLon)));
+            haversine.min(1.0)
+                    .lanewise(VectorOperators.SQRT)
+                    .lanewise(VectorOperators.ASIN)
+                    .mul(2 * StraightLineDistanceService.EARTH_RADIUS_KM)
+                    .intoArray(out, i);
+        }
+        StraightLineDistanceService.scalarDistancesFrom(origin, latitudes, longitudes, i, count, out);
+    }
+}